@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.LifecycleManager;
+import com.google.appengine.api.ThreadManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Starts the background threads of the comment classes, and runs their shutdown tasks when the
+ * instance shuts down.
+ *
+ * App Engine keeps a single shutdown hook per instance, so every class registers its shutdown task
+ * here instead of setting its own.
+ */
+final class BackgroundThreads {
+  private static final List<Runnable> shutdownTasks = new CopyOnWriteArrayList<>();
+
+  // Guarded by BackgroundThreads.class.
+  private static boolean hookSet = false;
+
+  private BackgroundThreads() {
+    // Disallow instances.
+  }
+
+  /**
+   * Starts a background thread named {@code name} running {@code body}.
+   */
+  static Thread start(String name, Runnable body) {
+    Thread thread = ThreadManager.backgroundThreadFactory().newThread(body);
+    thread.setName(name);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Returns a new executor that runs scheduled tasks on one background thread.
+   */
+  static ScheduledExecutorService newScheduler() {
+    return Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+  }
+
+  /**
+   * Runs {@code task} when the instance shuts down, after the tasks registered before it. Tasks must
+   * catch their own exceptions.
+   */
+  static synchronized void onShutdown(Runnable task) {
+    shutdownTasks.add(task);
+    if (!hookSet) {
+      LifecycleManager.getInstance().setShutdownHook(BackgroundThreads::shutDown);
+      hookSet = true;
+    }
+  }
+
+  private static void shutDown() {
+    for (Runnable task : shutdownTasks) {
+      task.run();
+    }
+  }
+}
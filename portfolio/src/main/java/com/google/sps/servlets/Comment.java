@@ -1,5 +1,7 @@
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.Entity;
+
 /**
  * The Comment class contains the components of a "comment" object.
  * Namely, a unique id, the text content, and a timestamp.
@@ -26,4 +28,18 @@ public class Comment {
     this.sentiment = sentiment;
     this.isOwner = isOwner;
   }
+
+  /**
+   * Creates a Comment from a Datastore entity of kind "Comment".
+   *
+   * @param entity The entity holding the comment.
+   * @param sentiment The sentiment of the comment text.
+   * @param isOwner True if the logged in user wrote this comment.
+   */
+  static Comment fromEntity(Entity entity, float sentiment, boolean isOwner) {
+    long id = entity.getKey().getId();
+    String nickname = (String) entity.getProperty("nickname");
+    String text = (String) entity.getProperty("text");
+    return new Comment(id, nickname, text, sentiment, isOwner);
+  }
 }
@@ -0,0 +1,274 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+/**
+ * Sends comment changes to every client connected to /comment-stream as server-sent events.
+ *
+ * There is one broadcaster per server. Publishers hand changes to a single broadcast thread, so a
+ * slow client never holds up the request that made the change. Clients whose connection fails are
+ * dropped, and a comment line is sent periodically so that dead connections are noticed.
+ *
+ * Every event carries an id made of a token for this server and a sequence number, and the most
+ * recent events are kept. A reconnecting client sends the id of the last event it saw, and is sent
+ * every event since then. If those events are no longer kept, or the id is from another server, the
+ * client is sent a "reload" event instead, telling it to load the comments again.
+ */
+final class CommentBroadcaster {
+  private static final long HEARTBEAT_SECONDS = 15;
+  // The number of recent events kept for clients that reconnect.
+  private static final int RECENT_EVENT_COUNT = 500;
+
+  /** A connected client. */
+  private static final class Client implements AsyncListener {
+    private final AsyncContext context;
+    // The email of the logged in user, or null if nobody is logged in.
+    private final String email;
+
+    private Client(AsyncContext context, String email) {
+      this.context = context;
+      this.email = email;
+    }
+
+    /** Sends {@code event} to the client, dropping the client if that fails. */
+    private void send(String event) {
+      try {
+        PrintWriter writer = context.getResponse().getWriter();
+        writer.write(event);
+        writer.flush();
+        if (!writer.checkError()) {
+          return;
+        }
+      } catch (IOException | IllegalStateException e) {
+        // Fall through and drop the client.
+      }
+      disconnect();
+    }
+
+    private void disconnect() {
+      if (clients.remove(this)) {
+        try {
+          context.complete();
+        } catch (IllegalStateException e) {
+          // Already completed by the container.
+        }
+      }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      clients.remove(this);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      disconnect();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      disconnect();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+
+  /** A sent event, kept so it can be sent again to clients that reconnect. */
+  private static final class RecentEvent {
+    private final long sequence;
+    private final String ownerEvent;
+    private final String viewerEvent;
+    // The email of the user who sees ownerEvent, or null if everyone sees the same event.
+    private final String ownerEmail;
+
+    private RecentEvent(long sequence, String ownerEvent, String viewerEvent, String ownerEmail) {
+      this.sequence = sequence;
+      this.ownerEvent = ownerEvent;
+      this.viewerEvent = viewerEvent;
+      this.ownerEmail = ownerEmail;
+    }
+
+    private String forClient(Client client) {
+      return ownerEmail != null && ownerEmail.equals(client.email) ? ownerEvent : viewerEvent;
+    }
+  }
+
+  private static final Gson gson = new Gson();
+  private static final Set<Client> clients = ConcurrentHashMap.newKeySet();
+
+  // Distinguishes event ids of this server from those of other servers and earlier runs.
+  private static final String serverToken = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+  // Only used on the broadcast thread. Oldest first.
+  private static final Deque<RecentEvent> recentEvents = new ArrayDeque<>();
+  private static long lastSequence = 0;
+
+  // Created on first use. Guarded by CommentBroadcaster.class.
+  private static ScheduledExecutorService broadcaster;
+
+  private CommentBroadcaster() {
+    // Disallow instances.
+  }
+
+  /**
+   * Registers an open event stream to receive comment changes until it closes.
+   *
+   * @param context The async context of the stream request.
+   * @param email The email of the logged in user, or null if nobody is logged in.
+   * @param lastEventId The id of the last event the client saw before reconnecting, or null if it
+   *     is connecting for the first time.
+   */
+  static void connect(AsyncContext context, String email, String lastEventId) {
+    Client client = new Client(context, email);
+    context.addListener(client);
+    // Catching up and registering on the broadcast thread means no event is missed or sent twice.
+    getBroadcaster().execute(() -> {
+      catchUp(client, lastEventId);
+      clients.add(client);
+    });
+  }
+
+  /**
+   * Sends {@code client} every kept event after {@code lastEventId}, or a "reload" event if some of
+   * them are no longer kept, and then the id of the latest event.
+   */
+  private static void catchUp(Client client, String lastEventId) {
+    if (lastEventId != null) {
+      long sequence = parseSequence(lastEventId);
+      long oldestKept = recentEvents.isEmpty() ? lastSequence + 1 : recentEvents.peek().sequence;
+      if (sequence < oldestKept - 1 || sequence > lastSequence) {
+        client.send("event: reload\ndata: {}\n\n");
+      } else {
+        StringBuilder missed = new StringBuilder();
+        for (RecentEvent event : recentEvents) {
+          if (event.sequence > sequence) {
+            missed.append(event.forClient(client));
+          }
+        }
+        if (missed.length() > 0) {
+          client.send(missed.toString());
+        }
+      }
+    }
+    // An id without data sets the client's last event id without dispatching an event.
+    client.send("id: " + formatId(lastSequence) + "\n\n");
+  }
+
+  /**
+   * Returns the sequence number in an event id from this server, or -1 if the id is malformed or
+   * from another server.
+   */
+  private static long parseSequence(String eventId) {
+    int separator = eventId.indexOf('-');
+    if (separator < 0 || !eventId.substring(0, separator).equals(serverToken)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(eventId.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String formatId(long sequence) {
+    return serverToken + "-" + sequence;
+  }
+
+  /**
+   * Sends a newly stored comment to every connected client as an "added" event.
+   */
+  static void publishAdded(Entity commentEntity) {
+    float sentiment;
+    try {
+      sentiment = SentimentAnalyzer.getCommentSentiments(Collections.singletonList(commentEntity))
+          .get(commentEntity.getKey().getId());
+    } catch (IOException e) {
+      // Without the comment in the sequence, clients can only catch up by loading it again.
+      System.err.println("Could not score comment for broadcast: " + e);
+      getBroadcaster().execute(() -> publish("reload", "{}", "{}", null));
+      return;
+    }
+
+    String ownerData = gson.toJson(Comment.fromEntity(commentEntity, sentiment, true));
+    String viewerData = gson.toJson(Comment.fromEntity(commentEntity, sentiment, false));
+    String email = (String) commentEntity.getProperty("email");
+
+    getBroadcaster().execute(() -> publish("added", ownerData, viewerData, email));
+  }
+
+  /**
+   * Tells every connected client that a comment was deleted with a "deleted" event.
+   */
+  static void publishDeleted(long id) {
+    String data = "{\"id\":" + id + "}";
+    getBroadcaster().execute(() -> publish("deleted", data, data, null));
+  }
+
+  /**
+   * Numbers an event, keeps it for clients that reconnect and sends it to every connected client.
+   * Must be called on the broadcast thread.
+   */
+  private static void publish(String name, String ownerData, String viewerData, String ownerEmail) {
+    long sequence = ++lastSequence;
+    String ownerEvent = formatEvent(sequence, name, ownerData);
+    String viewerEvent = ownerData.equals(viewerData) ? ownerEvent
+        : formatEvent(sequence, name, viewerData);
+    RecentEvent event = new RecentEvent(sequence, ownerEvent, viewerEvent, ownerEmail);
+
+    recentEvents.add(event);
+    if (recentEvents.size() > RECENT_EVENT_COUNT) {
+      recentEvents.remove();
+    }
+    for (Client client : clients) {
+      client.send(event.forClient(client));
+    }
+  }
+
+  private static void sendToAll(String event) {
+    for (Client client : clients) {
+      client.send(event);
+    }
+  }
+
+  private static String formatEvent(long sequence, String name, String data) {
+    return "id: " + formatId(sequence) + "\nevent: " + name + "\ndata: " + data + "\n\n";
+  }
+
+  private static synchronized ScheduledExecutorService getBroadcaster() {
+    if (broadcaster == null) {
+      broadcaster = BackgroundThreads.newScheduler();
+      broadcaster.scheduleAtFixedRate(() -> sendToAll(": heartbeat\n\n"), HEARTBEAT_SECONDS,
+          HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+    return broadcaster;
+  }
+}
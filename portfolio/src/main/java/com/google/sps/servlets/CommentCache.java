@@ -0,0 +1,216 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.Gson;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory cache of the first page of comments, kept as ready-to-send JSON.
+ *
+ * Reads load the cache from the comment repository when it is empty or expired, and writes made through this
+ * instance update it directly. Each comment is serialized twice, once as seen by its owner and once
+ * as seen by everyone else, so that applying the viewer's {@code isOwner} flag is just a choice
+ * between two strings. Comments written through other instances show up once the cache expires.
+ *
+ * Each loaded comment also keeps the cursor positioned just after it, so a page served from the
+ * cache can tell the client where the next page starts.
+ */
+final class CommentCache {
+  // The number of comments cached. Must be at least the largest page size a user can ask for.
+  private static final int CACHE_SIZE = CommentQuery.MAX_PAGE_SIZE;
+  // How long a loaded cache is trusted before it is reloaded.
+  private static final long EXPIRATION_MILLIS = 30000;
+
+  /** A cached comment. */
+  private static final class CachedComment {
+    private final long id;
+    private final String email;
+    private final long timestamp;
+    private final String ownerJson;
+    private final String viewerJson;
+    // Web-safe cursor just after this comment, or null if it was added without a query.
+    private final String cursor;
+
+    private CachedComment(long id, String email, long timestamp, String ownerJson,
+        String viewerJson, String cursor) {
+      this.id = id;
+      this.email = email;
+      this.timestamp = timestamp;
+      this.ownerJson = ownerJson;
+      this.viewerJson = viewerJson;
+      this.cursor = cursor;
+    }
+  }
+
+  /** Everything cached at one point in time. */
+  private static final class Contents {
+    // Newest first.
+    private final List<CachedComment> comments;
+    // True if there are no comments older than the last cached one.
+    private final boolean complete;
+    private final long expirationTime;
+
+    private Contents(List<CachedComment> comments, boolean complete, long expirationTime) {
+      this.comments = Collections.unmodifiableList(comments);
+      this.complete = complete;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private static final Gson gson = new Gson();
+
+  // Replaced, never modified, while holding CommentCache.class. Null when nothing is cached.
+  private static volatile Contents contents = null;
+
+  private CommentCache() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the first page of comments as a JSON object holding the "comments" array and the
+   * "cursor" of the next page, or null if the page can't be served from the cache.
+   *
+   * @param pageSize The number of comments to return. At most {@code CACHE_SIZE}.
+   * @param viewerEmail The email of the logged in user, or null if nobody is logged in.
+   * @throws IOException On failure to load or score comments.
+   */
+  static String getFirstPageJson(int pageSize, String viewerEmail) throws IOException {
+    Contents cached = contents;
+    if (cached == null || System.currentTimeMillis() > cached.expirationTime) {
+      cached = reload();
+    }
+
+    int size = Math.min(pageSize, cached.comments.size());
+    String cursor = null;
+    if (size < cached.comments.size() || !cached.complete) {
+      cursor = size == 0 ? null : cached.comments.get(size - 1).cursor;
+      if (cursor == null) {
+        // The page ends on a comment added since the last load, so where the next page starts
+        // isn't known.
+        return null;
+      }
+    }
+
+    StringBuilder json = new StringBuilder("{\"comments\":[");
+    for (int i = 0; i < size; i++) {
+      CachedComment comment = cached.comments.get(i);
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(comment.email.equals(viewerEmail) ? comment.ownerJson : comment.viewerJson);
+    }
+    return json.append("],\"cursor\":").append(gson.toJson(cursor)).append('}').toString();
+  }
+
+  /**
+   * Adds a newly stored comment entity to the cache.
+   */
+  static synchronized void add(Entity commentEntity) {
+    Contents cached = contents;
+    if (cached == null) {
+      // Nothing is cached yet, so the next read loads the new comment along with the rest.
+      return;
+    }
+
+    if (!commentEntity.hasProperty("sentiment")) {
+      // Leave scoring to the next load rather than caching a made-up score.
+      contents = null;
+      return;
+    }
+
+    long id = commentEntity.getKey().getId();
+    for (CachedComment comment : cached.comments) {
+      if (comment.id == id) {
+        // A reload after the comment was stored already picked it up.
+        return;
+      }
+    }
+
+    float sentiment = ((Number) commentEntity.getProperty("sentiment")).floatValue();
+    CachedComment added = toCachedComment(commentEntity, sentiment, null);
+    List<CachedComment> updated = new ArrayList<>(cached.comments);
+    int index = 0;
+    while (index < updated.size() && updated.get(index).timestamp > added.timestamp) {
+      index++;
+    }
+    updated.add(index, added);
+
+    boolean complete = cached.complete;
+    if (updated.size() > CACHE_SIZE) {
+      updated.remove(updated.size() - 1);
+      complete = false;
+    }
+    contents = new Contents(updated, complete, cached.expirationTime);
+  }
+
+  /**
+   * Removes a deleted comment from the cache.
+   */
+  static synchronized void remove(long id) {
+    Contents cached = contents;
+    if (cached == null) {
+      return;
+    }
+
+    for (CachedComment comment : cached.comments) {
+      if (comment.id == id) {
+        // The comment after the last cached one isn't known, so reload on the next read.
+        contents = null;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Loads the first page of comments from the comment repository into the cache.
+   */
+  private static synchronized Contents reload() throws IOException {
+    // Another thread may have reloaded while this one waited for the lock.
+    Contents cached = contents;
+    if (cached != null && System.currentTimeMillis() <= cached.expirationTime) {
+      return cached;
+    }
+
+    CommentRepository.Page page = Repositories.getCommentRepository().getPage(null, CACHE_SIZE);
+    List<Entity> entities = page.getComments();
+    List<String> cursors = page.getCursors();
+    Map<Long, Float> sentiments = SentimentAnalyzer.getCommentSentiments(entities);
+
+    List<CachedComment> loaded = new ArrayList<>();
+    for (int i = 0; i < entities.size(); i++) {
+      Entity entity = entities.get(i);
+      loaded.add(toCachedComment(entity, sentiments.get(entity.getKey().getId()), cursors.get(i)));
+    }
+
+    contents = new Contents(loaded, loaded.size() < CACHE_SIZE,
+        System.currentTimeMillis() + EXPIRATION_MILLIS);
+    return contents;
+  }
+
+  private static CachedComment toCachedComment(Entity entity, float sentiment, String cursor) {
+    String ownerJson = gson.toJson(Comment.fromEntity(entity, sentiment, true));
+    String viewerJson = gson.toJson(Comment.fromEntity(entity, sentiment, false));
+    return new CachedComment(entity.getKey().getId(), (String) entity.getProperty("email"),
+        (long) entity.getProperty("timestamp"), ownerJson, viewerJson, cursor);
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Reads pages of comments from the comment repository, newest first.
+ *
+ * Pages are located with cursors rather than offsets, so each page costs the same no matter how
+ * far back it is.
+ */
+final class CommentQuery {
+  static final int DEFAULT_PAGE_SIZE = 5;
+  static final int MAX_PAGE_SIZE = 10;
+
+  private static final Gson gson = new Gson();
+
+  private CommentQuery() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the page size requested by the "page-size" parameter, {@code DEFAULT_PAGE_SIZE} if it
+   * is missing, or -1 if it is invalid.
+   *
+   * @param request The request containing the requested number of comments per page.
+   * @return The number of comments to send.
+   */
+  static int getPageSize(HttpServletRequest request) {
+    String pageSizeString = request.getParameter("page-size");
+    if (pageSizeString == null || pageSizeString.isEmpty()) {
+      return DEFAULT_PAGE_SIZE;
+    }
+
+    // Convert input to int.
+    int pageSize;
+    try {
+      pageSize = Integer.parseInt(pageSizeString);
+    } catch (NumberFormatException e) {
+      System.err.println("Could not convert to int: " + pageSizeString);
+      return -1;
+    }
+
+    // Check that the input is between 1 and MAX_PAGE_SIZE
+    if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+      System.err.println("Page size is out of range: " + pageSizeString);
+      return -1;
+    }
+
+    return pageSize;
+  }
+
+  /**
+   * Streams one page of comments to {@code out} as a JSON object holding the "comments" array and
+   * the "cursor" of the next page, which is null once there are no more comments.
+   *
+   * @param startCursor Where the page starts, or null for the first page.
+   * @param pageSize The number of comments in the page.
+   * @param viewerEmail The email of the logged in user, or null if nobody is logged in.
+   * @param out Where to write the page.
+   * @throws IOException On failure to read or score comments or to write the page.
+   * @throws IllegalArgumentException If the cursor is invalid.
+   */
+  static void writePage(String startCursor, int pageSize, String viewerEmail, Writer out)
+      throws IOException {
+    CommentRepository.Page page =
+        Repositories.getCommentRepository().getPage(startCursor, pageSize);
+    List<Entity> comments = page.getComments();
+    Map<Long, Float> sentiments = SentimentAnalyzer.getCommentSentiments(comments);
+
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("comments").beginArray();
+    for (Entity entity : comments) {
+      float sentiment = sentiments.get(entity.getKey().getId());
+      boolean isOwner = entity.getProperty("email").equals(viewerEmail);
+      gson.toJson(Comment.fromEntity(entity, sentiment, isOwner), Comment.class, writer);
+    }
+    writer.endArray();
+
+    // A short page means the end was reached.
+    String nextCursor = comments.size() < pageSize ? null : page.getEndCursor();
+    writer.name("cursor").value(nextCursor);
+    writer.endObject();
+    writer.flush();
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that streams comment changes to the comments page as server-sent events.
+ */
+@WebServlet(urlPatterns = "/comment-stream", asyncSupported = true)
+public class CommentStreamServlet extends HttpServlet {
+  // How long a stream stays open before the client is asked to reconnect. Kept short because the
+  // App Engine standard front end may buffer the response until the stream closes.
+  private static final long STREAM_TIMEOUT_MILLIS = 25000;
+  // How long the browser waits before reconnecting once the stream closes.
+  private static final long RECONNECT_MILLIS = 1000;
+
+  /**
+   * {@inheritDoc}
+   *
+   * Opens an event stream that receives an "added" event for each new comment and a "deleted" event
+   * for each deleted comment. A browser reconnecting with a Last-Event-ID header is first sent the
+   * events it missed, or a "reload" event if they can't be sent.
+   *
+   * This servlet is called by the EventSource opened when comments.html is loaded.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    String viewerEmail =
+        userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : null;
+
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    response.getWriter().write("retry: " + RECONNECT_MILLIS + "\n\n");
+    response.flushBuffer();
+
+    AsyncContext context = request.startAsync();
+    context.setTimeout(STREAM_TIMEOUT_MILLIS);
+    CommentBroadcaster.connect(context, viewerEmail, request.getHeader("Last-Event-ID"));
+  }
+}
@@ -0,0 +1,291 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes new comments to the comment repository in the background.
+ *
+ * Requests only enqueue the new comment entity, after giving it an id from the repository. A fixed
+ * number of background workers take comments off the queue in batches, score their sentiment,
+ * store the whole batch with one call, add the stored comments to the {@code CommentCache} and
+ * publish them to connected clients. When the queue is full, {@code submit} refuses the comment so
+ * that the request can write it itself instead of piling up more work.
+ *
+ * Because every queued comment already has its id, storing a batch again after a failure that may
+ * have stored it anyway just overwrites the same comments. Workers therefore retry a failed batch,
+ * backing off between attempts. A batch that still fails after {@code MAX_STORE_ATTEMPTS} is
+ * retried one comment at a time, and a single comment that fails that often is taken to be one
+ * that can never be stored and is logged and dropped, so it can't hold up the worker forever.
+ * When the instance shuts down, whatever is still queued or being retried is stored before it
+ * goes.
+ */
+final class CommentWriter {
+  private static final int QUEUE_CAPACITY = 10000;
+  private static final int WORKER_COUNT = 2;
+  private static final int MAX_BATCH_SIZE = 100;
+  // Ids are reserved this many at a time, so that most comments don't need a call of their own.
+  private static final int ID_BLOCK_SIZE = 100;
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 200;
+  private static final long MAX_RETRY_DELAY_MILLIS = 10000;
+  // About three minutes of retries, which rides out most outages of the repository.
+  private static final int MAX_STORE_ATTEMPTS = 20;
+  // How long shutdown may spend storing what is left. App Engine allows about 30 seconds.
+  private static final long SHUTDOWN_DEADLINE_MILLIS = 20000;
+  // How long shutdown waits for each interrupted worker to let go of its batch.
+  private static final long WORKER_JOIN_MILLIS = 1000;
+
+  private static final BlockingQueue<Entity> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  // Comments taken off the queue by a worker and not yet stored.
+  private static final Set<Entity> inFlight = ConcurrentHashMap.newKeySet();
+
+  // Guarded by idLock.
+  private static final Deque<Long> ids = new ArrayDeque<>();
+  private static final Object idLock = new Object();
+
+  // Guarded by CommentWriter.class.
+  private static final List<Thread> workers = new ArrayList<>();
+  private static boolean shuttingDown = false;
+
+  private CommentWriter() {
+    // Disallow instances.
+  }
+
+  /**
+   * Queues {@code commentEntity} to be scored and stored.
+   *
+   * @param commentEntity A comment without an id.
+   * @return False if the comment was not queued, because the queue is full, the instance is
+   *     shutting down or no id could be reserved. The caller should store it itself.
+   */
+  static boolean submit(Entity commentEntity) {
+    Entity withId;
+    try {
+      withId = new Entity("Comment", nextId());
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not reserve a comment id: " + e);
+      return false;
+    }
+    withId.setPropertiesFrom(commentEntity);
+
+    synchronized (CommentWriter.class) {
+      if (shuttingDown) {
+        return false;
+      }
+      startWorkers();
+      return queue.offer(withId);
+    }
+  }
+
+  private static long nextId() throws IOException {
+    synchronized (idLock) {
+      if (ids.isEmpty()) {
+        ids.addAll(Repositories.getCommentRepository().allocateIds(ID_BLOCK_SIZE));
+      }
+      return ids.remove();
+    }
+  }
+
+  private static void startWorkers() {
+    if (!workers.isEmpty()) {
+      return;
+    }
+
+    for (int i = 0; i < WORKER_COUNT; i++) {
+      workers.add(BackgroundThreads.start("comment-writer-" + i, CommentWriter::runWorker));
+    }
+    BackgroundThreads.onShutdown(CommentWriter::storeRemaining);
+  }
+
+  private static void runWorker() {
+    List<Entity> batch = new ArrayList<>();
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        // Block for the first comment, then take whatever else has queued up behind it.
+        batch.add(queue.take());
+        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+        inFlight.addAll(batch);
+        writeBatch(batch);
+      } catch (InterruptedException e) {
+        // Left in inFlight for the shutdown hook to store.
+        Thread.currentThread().interrupt();
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Scores, stores and publishes a batch of new comments, retrying until the batch is stored or
+   * turns out to hold a comment that can never be stored.
+   */
+  private static void writeBatch(List<Entity> batch) throws InterruptedException {
+    setSentiments(batch);
+    storeBatch(batch);
+  }
+
+  /** Stores and publishes a scored batch, as {@code writeBatch} describes. */
+  private static void storeBatch(List<Entity> batch) throws InterruptedException {
+    CommentRepository comments = Repositories.getCommentRepository();
+    List<Entity> stored = null;
+    long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS;
+    Exception failure = null;
+    for (int attempt = 1; attempt <= MAX_STORE_ATTEMPTS; attempt++) {
+      try {
+        stored = comments.putAll(batch);
+        break;
+      } catch (IllegalArgumentException e) {
+        // Some comment in the batch can never be stored, so don't bother retrying.
+        failure = e;
+        break;
+      } catch (IOException | RuntimeException e) {
+        failure = e;
+        if (attempt < MAX_STORE_ATTEMPTS) {
+          System.err.println("Could not store " + batch.size() + " comments, retrying in "
+              + retryDelayMillis + "ms: " + e);
+          Thread.sleep(retryDelayMillis);
+          retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis * 2);
+        }
+      }
+    }
+
+    if (stored == null) {
+      if (batch.size() == 1) {
+        inFlight.removeAll(batch);
+        System.err.println("Could not store comment " + batch.get(0) + ", dropping it: " + failure);
+        return;
+      }
+      // Store the others one at a time, so that one bad comment only loses itself.
+      for (Entity commentEntity : batch) {
+        storeBatch(Collections.singletonList(commentEntity));
+      }
+      return;
+    }
+    inFlight.removeAll(batch);
+
+    for (Entity commentEntity : stored) {
+      CommentCache.add(commentEntity);
+      CommentBroadcaster.publishAdded(commentEntity);
+    }
+  }
+
+  /**
+   * Stores every comment still queued or being retried, before the instance shuts down. They are
+   * stored without a score, to be scored on read.
+   */
+  private static void storeRemaining() {
+    List<Thread> stopping;
+    synchronized (CommentWriter.class) {
+      shuttingDown = true;
+      stopping = new ArrayList<>(workers);
+    }
+    // Stop the workers first, so that no comment is between the queue and inFlight. A worker stuck
+    // in a call may still store its batch, which is harmless since the ids match.
+    for (Thread worker : stopping) {
+      worker.interrupt();
+    }
+    for (Thread worker : stopping) {
+      try {
+        worker.join(WORKER_JOIN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    List<Entity> remaining = new ArrayList<>(inFlight);
+    queue.drainTo(remaining);
+
+    long deadline = System.currentTimeMillis() + SHUTDOWN_DEADLINE_MILLIS;
+    for (int start = 0; start < remaining.size(); start += MAX_BATCH_SIZE) {
+      int end = Math.min(remaining.size(), start + MAX_BATCH_SIZE);
+      if (!storeBeforeShutdown(remaining.subList(start, end), deadline)) {
+        for (Entity commentEntity : remaining.subList(start, remaining.size())) {
+          System.err.println("Comment may not have been stored before shutdown: " + commentEntity);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Stores {@code batch}, retrying until {@code deadline}. If some comment in it can never be
+   * stored, the others are stored one at a time and that one is dropped.
+   *
+   * @return False if the deadline passed first.
+   */
+  private static boolean storeBeforeShutdown(List<Entity> batch, long deadline) {
+    while (true) {
+      try {
+        Repositories.getCommentRepository().putAll(batch);
+        return true;
+      } catch (IllegalArgumentException e) {
+        if (batch.size() == 1) {
+          System.err.println("Could not store comment " + batch.get(0) + ", dropping it: " + e);
+          return true;
+        }
+        for (Entity commentEntity : batch) {
+          if (!storeBeforeShutdown(Collections.singletonList(commentEntity), deadline)) {
+            return false;
+          }
+        }
+        return true;
+      } catch (IOException | RuntimeException e) {
+        if (System.currentTimeMillis() >= deadline) {
+          System.err.println("Could not store comments before shutdown: " + e);
+          return false;
+        }
+        try {
+          Thread.sleep(INITIAL_RETRY_DELAY_MILLIS);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Scores every comment in the batch at once. If scoring fails, the comments are stored without a
+   * score and are scored on read instead, as are comments only the fallback scorer answered for.
+   */
+  private static void setSentiments(List<Entity> batch) {
+    List<String> texts = new ArrayList<>();
+    for (Entity commentEntity : batch) {
+      texts.add((String) commentEntity.getProperty("text"));
+    }
+
+    try {
+      List<Float> sentiments = SentimentAnalyzer.getStorableSentiments(texts);
+      for (int i = 0; i < batch.size(); i++) {
+        if (sentiments.get(i) != null) {
+          batch.get(i).setProperty("sentiment", sentiments.get(i));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not score comments, leaving them to be scored on read: " + e);
+    }
+  }
+}
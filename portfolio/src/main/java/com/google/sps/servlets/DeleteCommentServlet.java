@@ -14,20 +14,19 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Servlet that deletes comments from Datastore.
+ * Servlet that deletes comments.
  */
-@WebServlet("/delete-comment")
+@WebServlet(urlPatterns = "/delete-comment", asyncSupported = true)
 public class DeleteCommentServlet extends HttpServlet {
 
   /**
@@ -37,15 +36,22 @@ public class DeleteCommentServlet extends HttpServlet {
    *
    * Each comment listed in comments.html is associated with a Delete button that, when clicked,
    * makes a POST request to this servlet containing the comment's id. This function handles
-   * deleting that comment from the Datastore.
+   * deleting that comment.
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Obtain and prepare entities from datastore with kind "Comment".
+    RequestExecutor.execute(request, response, this::deleteComment);
+  }
+
+  /**
+   * Deletes the comment whose id is given in {@code request}.
+   */
+  private void deleteComment(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
     long id = Long.parseLong(request.getParameter("id"));
 
-    Key commentEntityKey = KeyFactory.createKey("Comment", id);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.delete(commentEntityKey);
+    Repositories.getCommentRepository().deleteAll(Collections.singletonList(id));
+    CommentCache.remove(id);
+    CommentBroadcaster.publishDeleted(id);
   }
 }
@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.CommentRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that deletes many comments at once.
+ */
+@WebServlet(urlPatterns = "/delete-comments", asyncSupported = true)
+public class DeleteCommentsServlet extends HttpServlet {
+
+  /**
+   * {@inheritDoc}
+   *
+   * Deletes either every comment whose id is given in an "id" parameter, or every comment written
+   * by the logged in user if the "all-mine" parameter is "true". Admins may delete anyone's
+   * comments by id, for moderation; everyone else may only delete their own. Responds with the
+   * number of comments deleted.
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::deleteComments);
+  }
+
+  /**
+   * Deletes the comments selected by {@code request}.
+   */
+  private void deleteComments(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn()) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    String email = userService.getCurrentUser().getEmail();
+    CommentRepository comments = Repositories.getCommentRepository();
+
+    List<Long> ids;
+    if ("true".equals(request.getParameter("all-mine"))) {
+      ids = comments.getIdsByEmail(email);
+    } else {
+      ids = parseIds(request.getParameterValues("id"));
+      if (ids == null) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid comment ids");
+        return;
+      }
+      if (!userService.isUserAdmin()) {
+        ids = keepIdsOwnedBy(comments, ids, email);
+      }
+    }
+
+    comments.deleteAll(ids);
+    for (long id : ids) {
+      CommentCache.remove(id);
+      CommentBroadcaster.publishDeleted(id);
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println("{\"deleted\":" + ids.size() + "}");
+  }
+
+  /**
+   * Returns the given comment ids as numbers, or null if any of them is not a number.
+   */
+  private List<Long> parseIds(String[] idStrings) {
+    if (idStrings == null) {
+      return null;
+    }
+
+    List<Long> ids = new ArrayList<>();
+    for (String id : idStrings) {
+      try {
+        ids.add(Long.parseLong(id));
+      } catch (NumberFormatException e) {
+        System.err.println("Could not convert to long: " + id);
+        return null;
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the ids of the comments in {@code ids} that exist and were written by {@code email}.
+   */
+  private List<Long> keepIdsOwnedBy(CommentRepository comments, List<Long> ids, String email)
+      throws IOException {
+    List<Long> ownedIds = new ArrayList<>();
+    for (Entity comment : comments.getAll(ids)) {
+      if (email.equals(comment.getProperty("email"))) {
+        ownedIds.add(comment.getKey().getId());
+      }
+    }
+    return ownedIds;
+  }
+}
@@ -68,10 +68,11 @@ public class FactsServlet extends HttpServlet {
    *
    * This function is called when a user requests a new random fun fact in the footer of any web
    * page. "Psuedo-random" is done with currQuestionIndex pointing to the next fun fact to write,
-   * and reshuffles the facts list when currQuestionIndex reaches its length.
+   * and reshuffles the facts list when currQuestionIndex reaches its length. Synchronized since
+   * requests may now be handled concurrently.
    */
   @Override
-  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+  public synchronized void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     // When the pointer exceeds the size of the facts list (or somehow becomes
     // negative), reset currQuestionIndex and reshuffle the facts list.
     if (currQuestionIndex >= facts.size() || currQuestionIndex < 0) {
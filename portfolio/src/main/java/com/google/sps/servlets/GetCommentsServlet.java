@@ -14,133 +14,56 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.cloud.language.v1.Document;
-import com.google.cloud.language.v1.LanguageServiceClient;
-import com.google.cloud.language.v1.Sentiment;
-import com.google.gson.Gson;
+import com.google.sps.requests.RequestExecutor;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Servlet that stores and returns comments.
+ * Servlet that returns the first page of comments.
  */
-@WebServlet("/get-comments")
+@WebServlet(urlPatterns = "/get-comments", asyncSupported = true)
 public class GetCommentsServlet extends HttpServlet {
 
-  // The max number of comments to send on a GET request. Is modified on POST request.
-  private int maxComments = 5;
-  private static final String COMMENT = "Comment";
-
   /**
    * {@inheritDoc}
    *
-   * Returns the most recently posted comments.
+   * Returns the most recently posted comments, along with a cursor for loading older ones from
+   * /more-comments.
    *
    * This servlet is called every time comments.html is loaded. The number of comments to send is
-   * specified by {@code maxComments}.
+   * given by the optional "page-size" parameter, between 1 and 10.
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    UserService userService = UserServiceFactory.getUserService();
-
-    // Obtain and prepare comments from Datastore.
-    Query commentsQuery = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    List<Entity> commentsPrepared =
-      datastore.prepare(commentsQuery).asList(FetchOptions.Builder.withLimit(maxComments));
-
-    List<Comment> comments = new ArrayList<>();
-    for (Entity entity : commentsPrepared) {
-      long id = entity.getKey().getId();
-      String email = (String) entity.getProperty("email");
-      String nickname = (String) entity.getProperty("nickname");
-      String text = (String) entity.getProperty("text");
-      float sentiment = getSentiment(text);
-      boolean isOwner = userService.isUserLoggedIn() &&
-                        email.equals(userService.getCurrentUser().getEmail());
-
-      Comment comment = new Comment(id, nickname, text, sentiment, isOwner);
-      comments.add(comment);
-    }
-
-    String commentsInJson = new Gson().toJson(comments);
-    response.setContentType("application/json;");
-    response.getWriter().println(commentsInJson);
+    RequestExecutor.execute(request, response, this::writeComments);
   }
 
   /**
-   * {@inheritDoc}
-   *
-   * Modifies the {@maxComments} static variable.
+   * Writes the first page of comments to {@code response} as JSON, from the cache if possible.
    */
-  @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    int maxCommentsRequest = getMaxComments(request);
-    if (maxCommentsRequest == -1) {
+  private void writeComments(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    int pageSize = CommentQuery.getPageSize(request);
+    if (pageSize == -1) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid page size");
       return;
     }
 
-    maxComments = maxCommentsRequest;
-    response.sendRedirect("/comments.html");
-  }
-
-  /**
-   * Returns the requested maximum number of comments to send, or -1 of the input is invalid.
-   *
-   * @param request The POST request containing the requested maximum number of comments to send.
-   * @return The maximum number of comments to send.
-   */
-  private int getMaxComments(HttpServletRequest request) {
-    String maxCommentsString = request.getParameter("max-comments");
-
-    // Convert input to int.
-    int maxComments;
-    try {
-      maxComments = Integer.parseInt(maxCommentsString);
-    } catch (NumberFormatException e) {
-      System.err.println("Could not convert to int: " + maxCommentsString);
-      return -1;
-    }
+    UserService userService = UserServiceFactory.getUserService();
+    String viewerEmail =
+        userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : null;
 
-    // Check that the input is between 1 and 10
-    if (maxComments < 1 || maxComments > 10) {
-      System.err.println("Max comments is out of range: " + maxCommentsString);
-      return -1;
+    response.setContentType("application/json;");
+    String commentsInJson = CommentCache.getFirstPageJson(pageSize, viewerEmail);
+    if (commentsInJson != null) {
+      response.getWriter().println(commentsInJson);
+    } else {
+      CommentQuery.writePage(null, pageSize, viewerEmail, response.getWriter());
     }
-
-    return maxComments;
-  }
-
-  /**
-   * Determines the positivity/negativity of comment text using the Cloud Natural Language library.
-   *
-   * @param text The text to analyze the sentiment of.
-   * @return A value between 0.0 and 10.0, representing how negative or positive the text is.
-   * @throws IOException On failure to create LanguageServiceClient.
-   */
-  private float getSentiment(String text) throws IOException {
-    Document doc = Document.newBuilder().setContent(text).setType(Document.Type.PLAIN_TEXT).build();
-    LanguageServiceClient languageService = LanguageServiceClient.create();
-    Sentiment sentiment = languageService.analyzeSentiment(doc).getDocumentSentiment();
-    float score = sentiment.getScore();
-
-    // Convert to 0.0 - 10.0 scale from the -1.0 to 1.0 scale.
-    score = (score + 1) * 5;
-
-    languageService.close();
-    return score;
   }
 }
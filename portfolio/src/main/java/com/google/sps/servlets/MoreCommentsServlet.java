@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.requests.RequestExecutor;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns older pages of comments.
+ */
+@WebServlet(urlPatterns = "/more-comments", asyncSupported = true)
+public class MoreCommentsServlet extends HttpServlet {
+
+  /**
+   * {@inheritDoc}
+   *
+   * Streams the page of comments starting at the "cursor" parameter, along with the cursor of the
+   * page after it.
+   *
+   * This servlet is called when the user clicks "Load more" in comments.html. The cursor is the one
+   * returned with the previous page, so earlier pages are never read again.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::writeComments);
+  }
+
+  /**
+   * Writes the requested page of comments to {@code response} as JSON.
+   */
+  private void writeComments(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    int pageSize = CommentQuery.getPageSize(request);
+    if (pageSize == -1) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid page size");
+      return;
+    }
+
+    String cursorString = request.getParameter("cursor");
+    if (cursorString == null || cursorString.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing cursor");
+      return;
+    }
+
+    UserService userService = UserServiceFactory.getUserService();
+    String viewerEmail =
+        userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : null;
+
+    response.setContentType("application/json;");
+    try {
+      CommentQuery.writePage(cursorString, pageSize, viewerEmail, response.getWriter());
+    } catch (IllegalArgumentException e) {
+      // Thrown while looking up the page, before anything is written.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+    }
+  }
+}
@@ -14,12 +14,14 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -28,8 +30,12 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Servlet that stores and returns comments.
  */
-@WebServlet("/new-comment")
+@WebServlet(urlPatterns = "/new-comment", asyncSupported = true)
 public class NewCommentServlet extends HttpServlet {
+  // Datastore refuses string properties longer than this, and a comment that can't be stored
+  // would only be retried by the CommentWriter until it gives up.
+  private static final int MAX_TEXT_BYTES = 1500;
+  private static final int MAX_NICKNAME_BYTES = 100;
 
   /**
    * {@inheritDoc}
@@ -39,6 +45,15 @@ public class NewCommentServlet extends HttpServlet {
    */
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::storeComment);
+  }
+
+  /**
+   * Queues the comment given in {@code request} to be stored and redirects back to the comments
+   * page.
+   */
+  private void storeComment(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
     UserService userService = UserServiceFactory.getUserService();
 
     String email = userService.getCurrentUser().getEmail();
@@ -55,15 +70,44 @@ public class NewCommentServlet extends HttpServlet {
       nickname = "Anonymous";
     }
 
+    if (text.getBytes(StandardCharsets.UTF_8).length > MAX_TEXT_BYTES
+        || nickname.getBytes(StandardCharsets.UTF_8).length > MAX_NICKNAME_BYTES) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Comment or nickname too long");
+      return;
+    }
+
     Entity commentEntity = new Entity("Comment");
     commentEntity.setProperty("email", email);
     commentEntity.setProperty("nickname", nickname);
     commentEntity.setProperty("text", text);
     commentEntity.setProperty("timestamp", timestamp);
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(commentEntity);
+    // Leave scoring and storing to the background writers unless they are too far behind.
+    if (!CommentWriter.submit(commentEntity)) {
+      setSentiment(commentEntity, text);
+      commentEntity = Repositories.getCommentRepository()
+          .putAll(Collections.singletonList(commentEntity)).get(0);
+      CommentCache.add(commentEntity);
+      CommentBroadcaster.publishAdded(commentEntity);
+    }
 
     response.sendRedirect("/comments.html");
   }
+
+  /**
+   * Scores the comment text once, when it is stored, so that it never has to be scored when the
+   * comment is read. Only used when the request stores the comment itself. If scoring fails or only
+   * the fallback scorer answers, the property is left unset and the comment is scored on read
+   * instead.
+   */
+  private void setSentiment(Entity commentEntity, String text) {
+    try {
+      Float sentiment = SentimentAnalyzer.getStorableSentiment(text);
+      if (sentiment != null) {
+        commentEntity.setProperty("sentiment", sentiment);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not score comment, leaving it to be scored on read: " + e);
+    }
+  }
 }
@@ -0,0 +1,180 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.sentiment.SentimentScore;
+import com.google.sps.sentiment.SentimentScorer;
+import com.google.sps.sentiment.SentimentScorers;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Determines the positivity/negativity of comment text using the {@code SentimentScorer} configured
+ * in appengine-web.xml.
+ *
+ * A single scorer is shared by every request instead of being created for each comment. Comments
+ * stored without a sentiment are scored on read, and those scores are kept in a bounded LRU cache
+ * keyed by comment id.
+ *
+ * Scores from the fallback scorer are never stored with a comment or cached, so that stored scores
+ * all come from the same model. Comments scored by the fallback when written are scored again on
+ * read until the usual scorer answers.
+ */
+final class SentimentAnalyzer {
+  // The most legacy comment scores to keep in memory.
+  private static final int CACHE_SIZE = 1000;
+  // The most sentiment requests to have in flight at once when scoring several comments.
+  private static final int MAX_CONCURRENT_REQUESTS = 8;
+
+  private static final Map<Long, Float> cache =
+      Collections.synchronizedMap(new LinkedHashMap<Long, Float>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Float> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  private static final ExecutorService scorers =
+      Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "sentiment-scorer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private static final SentimentScorer scorer = SentimentScorers.fromConfiguration();
+
+  private SentimentAnalyzer() {
+    // Disallow instances.
+  }
+
+  /**
+   * Scores the text of a new comment, to be stored with it.
+   *
+   * @param text The text to analyze the sentiment of.
+   * @return A value between 0.0 and 10.0, representing how negative or positive the text is, or
+   *     null if only the fallback scorer answered and the comment should be scored on read instead.
+   * @throws IOException On failure to reach the scoring backend.
+   */
+  static Float getStorableSentiment(String text) throws IOException {
+    return toStorable(scorer.scoreWithSource(text));
+  }
+
+  /**
+   * Returns the sentiment of each comment entity, using the score stored with the comment if there
+   * is one and scoring the comment otherwise.
+   *
+   * @param commentEntities Datastore entities of kind "Comment".
+   * @return The score of each comment, keyed by comment id.
+   * @throws IOException On failure to score any of the comments.
+   */
+  static Map<Long, Float> getCommentSentiments(List<Entity> commentEntities) throws IOException {
+    Map<Long, Float> sentiments = new HashMap<>();
+    // Comments stored before sentiment was saved with them still need to be scored.
+    Map<Long, String> unscoredTexts = new HashMap<>();
+    for (Entity entity : commentEntities) {
+      long id = entity.getKey().getId();
+      if (entity.hasProperty("sentiment")) {
+        sentiments.put(id, ((Number) entity.getProperty("sentiment")).floatValue());
+      } else {
+        unscoredTexts.put(id, (String) entity.getProperty("text"));
+      }
+    }
+    sentiments.putAll(getSentiments(unscoredTexts));
+    return sentiments;
+  }
+
+  /**
+   * Scores several comments, using cached scores where possible and requesting the rest
+   * concurrently.
+   *
+   * @param textsById The text of each comment to score, keyed by comment id.
+   * @return The score of each comment, keyed by comment id.
+   * @throws IOException On failure to score any of the comments.
+   */
+  static Map<Long, Float> getSentiments(Map<Long, String> textsById) throws IOException {
+    Map<Long, Float> scores = new HashMap<>();
+    Map<Long, Future<SentimentScore>> pending = new HashMap<>();
+    for (Map.Entry<Long, String> entry : textsById.entrySet()) {
+      Float cached = cache.get(entry.getKey());
+      if (cached != null) {
+        scores.put(entry.getKey(), cached);
+      } else {
+        String text = entry.getValue();
+        pending.put(entry.getKey(), scorers.submit(() -> scorer.scoreWithSource(text)));
+      }
+    }
+
+    for (Map.Entry<Long, Future<SentimentScore>> entry : pending.entrySet()) {
+      SentimentScore score = awaitScore(entry.getValue());
+      if (!score.isFallback()) {
+        cache.put(entry.getKey(), toScale(score));
+      }
+      scores.put(entry.getKey(), toScale(score));
+    }
+    return scores;
+  }
+
+  /**
+   * Scores the texts of several new comments concurrently, to be stored with them. Used for
+   * comments that don't have an id yet, so the scores aren't cached.
+   *
+   * @param texts The texts to score.
+   * @return The score of each text, in the same order as {@code texts}, each null if only the
+   *     fallback scorer answered for it.
+   * @throws IOException On failure to score any of the texts.
+   */
+  static List<Float> getStorableSentiments(List<String> texts) throws IOException {
+    List<Future<SentimentScore>> pending = new ArrayList<>();
+    for (String text : texts) {
+      pending.add(scorers.submit(() -> scorer.scoreWithSource(text)));
+    }
+
+    List<Float> scores = new ArrayList<>();
+    for (Future<SentimentScore> score : pending) {
+      scores.add(toStorable(awaitScore(score)));
+    }
+    return scores;
+  }
+
+  private static Float toStorable(SentimentScore score) {
+    return score.isFallback() ? null : toScale(score);
+  }
+
+  /** Converts to the 0.0 - 10.0 scale from the -1.0 to 1.0 scale. */
+  private static float toScale(SentimentScore score) {
+    return (score.getValue() + 1) * 5;
+  }
+
+  private static SentimentScore awaitScore(Future<SentimentScore> score) throws IOException {
+    try {
+      return score.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scoring comments", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not score comment", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.Entity;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores comments, held as entities of kind "Comment" with "email", "nickname", "text",
+ * "timestamp" and optionally "sentiment" properties.
+ */
+public interface CommentRepository {
+
+  /** A page of comments, newest first. */
+  final class Page {
+    private final List<Entity> comments;
+    private final List<String> cursors;
+
+    /**
+     * @param comments The comments in the page, newest first.
+     * @param cursors For each comment, the cursor of the page starting just after it.
+     */
+    public Page(List<Entity> comments, List<String> cursors) {
+      if (comments.size() != cursors.size()) {
+        throw new IllegalArgumentException("Need one cursor per comment");
+      }
+      this.comments = Collections.unmodifiableList(comments);
+      this.cursors = Collections.unmodifiableList(cursors);
+    }
+
+    public List<Entity> getComments() {
+      return comments;
+    }
+
+    public List<String> getCursors() {
+      return cursors;
+    }
+
+    /**
+     * Returns the cursor of the page after this one, or null if this page is empty.
+     */
+    public String getEndCursor() {
+      return cursors.isEmpty() ? null : cursors.get(cursors.size() - 1);
+    }
+  }
+
+  /**
+   * Returns up to {@code pageSize} comments, newest first.
+   *
+   * @param startCursor A cursor returned in an earlier page, or null to start with the newest
+   *     comment.
+   * @throws IllegalArgumentException If the cursor is invalid.
+   */
+  Page getPage(String startCursor, int pageSize) throws IOException;
+
+  /**
+   * Returns the comments with the given ids, leaving out ids that have no comment.
+   */
+  List<Entity> getAll(List<Long> ids) throws IOException;
+
+  /**
+   * Returns the ids of every comment written by {@code email}.
+   */
+  List<Long> getIdsByEmail(String email) throws IOException;
+
+  /**
+   * Reserves ids for new comments, which are never assigned to any other comment.
+   */
+  List<Long> allocateIds(int count) throws IOException;
+
+  /**
+   * Stores new comments.
+   *
+   * @param comments Entities of kind "Comment", either without an id or with one from
+   *     {@code allocateIds}. A comment with an id replaces any comment already stored under it, so
+   *     storing the same comments again is harmless.
+   * @return The stored comments, in the same order, each with its id.
+   */
+  List<Entity> putAll(List<Entity> comments) throws IOException;
+
+  /**
+   * Deletes the comments with the given ids. Ids that have no comment are ignored.
+   */
+  void deleteAll(Collection<Long> ids) throws IOException;
+}
@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores comments in Datastore.
+ *
+ * Pages are located with Datastore query cursors rather than offsets, so each page costs the same
+ * no matter how far back it is.
+ */
+final class DatastoreCommentRepository implements CommentRepository {
+  // Datastore accepts up to 1000 keys per get call.
+  private static final int GET_BATCH_SIZE = 1000;
+  // Keys fetched per round trip when listing a user's comments.
+  private static final int QUERY_CHUNK_SIZE = 500;
+
+  private static final Query NEWEST_FIRST =
+      new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+
+  @Override
+  public Page getPage(String startCursor, int pageSize) {
+    FetchOptions options = FetchOptions.Builder.withLimit(pageSize).prefetchSize(pageSize);
+    if (startCursor != null) {
+      options.startCursor(Cursor.fromWebSafeString(startCursor));
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    QueryResultIterator<Entity> results =
+        datastore.prepare(NEWEST_FIRST).asQueryResultIterator(options);
+
+    List<Entity> comments = new ArrayList<>();
+    List<String> cursors = new ArrayList<>();
+    while (results.hasNext()) {
+      comments.add(results.next());
+      cursors.add(results.getCursor().toWebSafeString());
+    }
+    return new Page(comments, cursors);
+  }
+
+  @Override
+  public List<Entity> getAll(List<Long> ids) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    List<Key> keys = toKeys(ids);
+
+    List<Entity> comments = new ArrayList<>();
+    for (int start = 0; start < keys.size(); start += GET_BATCH_SIZE) {
+      List<Key> batch = keys.subList(start, Math.min(keys.size(), start + GET_BATCH_SIZE));
+      Map<Key, Entity> found = datastore.get(batch);
+      for (Key key : batch) {
+        if (found.containsKey(key)) {
+          comments.add(found.get(key));
+        }
+      }
+    }
+    return comments;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Uses a keys-only query so that no comment contents are read.
+   */
+  @Override
+  public List<Long> getIdsByEmail(String email) {
+    Query query = new Query("Comment")
+        .setFilter(new FilterPredicate("email", FilterOperator.EQUAL, email))
+        .setKeysOnly();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+    List<Long> ids = new ArrayList<>();
+    FetchOptions options = FetchOptions.Builder.withChunkSize(QUERY_CHUNK_SIZE);
+    for (Entity entity : datastore.prepare(query).asIterable(options)) {
+      ids.add(entity.getKey().getId());
+    }
+    return ids;
+  }
+
+  @Override
+  public List<Long> allocateIds(int count) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    List<Long> ids = new ArrayList<>();
+    for (Key key : datastore.allocateIds("Comment", count)) {
+      ids.add(key.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Stores every comment with one multi-entity put, which assigns any missing ids in place.
+   */
+  @Override
+  public List<Entity> putAll(List<Entity> comments) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    datastore.put(comments);
+    return comments;
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids) {
+    BatchDeleter.deleteAll(toKeys(ids));
+  }
+
+  private static List<Key> toKeys(Collection<Long> ids) {
+    List<Key> keys = new ArrayList<>();
+    for (long id : ids) {
+      keys.add(KeyFactory.createKey("Comment", id));
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,159 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.logstore.LogStore;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores comments in a {@code LogStore} on local disk, for running without Datastore.
+ */
+final class LocalCommentRepository implements CommentRepository {
+
+  /** The stored properties of a comment. */
+  private static final class StoredComment {
+    private final String email;
+    private final String nickname;
+    private final String text;
+    private final long timestamp;
+    // Null if the comment has not been scored.
+    private final Float sentiment;
+
+    private StoredComment(String email, String nickname, String text, long timestamp,
+        Float sentiment) {
+      this.email = email;
+      this.nickname = nickname;
+      this.text = text;
+      this.timestamp = timestamp;
+      this.sentiment = sentiment;
+    }
+  }
+
+  private static final LogStore.Codec<StoredComment> CODEC = new LogStore.Codec<StoredComment>() {
+    @Override
+    public void write(DataOutput out, StoredComment comment) throws IOException {
+      out.writeUTF(comment.email);
+      out.writeUTF(comment.nickname);
+      out.writeUTF(comment.text);
+      out.writeLong(comment.timestamp);
+      out.writeBoolean(comment.sentiment != null);
+      if (comment.sentiment != null) {
+        out.writeFloat(comment.sentiment);
+      }
+    }
+
+    @Override
+    public StoredComment read(DataInput in) throws IOException {
+      String email = in.readUTF();
+      String nickname = in.readUTF();
+      String text = in.readUTF();
+      long timestamp = in.readLong();
+      Float sentiment = in.readBoolean() ? in.readFloat() : null;
+      return new StoredComment(email, nickname, text, timestamp, sentiment);
+    }
+  };
+
+  private final LogStore<StoredComment> store;
+
+  LocalCommentRepository(Path file) throws IOException {
+    store = LogStore.open(file, CODEC, comment -> comment.timestamp);
+  }
+
+  @Override
+  public Page getPage(String startCursor, int pageSize) throws IOException {
+    List<Entity> comments = new ArrayList<>();
+    List<String> cursors = new ArrayList<>();
+    for (LogStore.Record<StoredComment> record : store.list(startCursor, pageSize)) {
+      comments.add(toEntity(record.getId(), record.getValue()));
+      cursors.add(record.getCursor());
+    }
+    return new Page(comments, cursors);
+  }
+
+  @Override
+  public List<Entity> getAll(List<Long> ids) throws IOException {
+    List<Entity> comments = new ArrayList<>();
+    for (long id : ids) {
+      StoredComment comment = store.get(id);
+      if (comment != null) {
+        comments.add(toEntity(id, comment));
+      }
+    }
+    return comments;
+  }
+
+  @Override
+  public List<Long> getIdsByEmail(String email) throws IOException {
+    List<Long> ids = new ArrayList<>();
+    for (LogStore.Record<StoredComment> record : store.list(null, Integer.MAX_VALUE)) {
+      if (record.getValue().email.equals(email)) {
+        ids.add(record.getId());
+      }
+    }
+    return ids;
+  }
+
+  @Override
+  public List<Long> allocateIds(int count) {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ids.add(store.nextId());
+    }
+    return ids;
+  }
+
+  @Override
+  public List<Entity> putAll(List<Entity> comments) throws IOException {
+    List<Entity> stored = new ArrayList<>();
+    for (Entity entity : comments) {
+      Number sentiment = (Number) entity.getProperty("sentiment");
+      StoredComment comment = new StoredComment((String) entity.getProperty("email"),
+          (String) entity.getProperty("nickname"), (String) entity.getProperty("text"),
+          (long) entity.getProperty("timestamp"),
+          sentiment == null ? null : sentiment.floatValue());
+
+      long id = entity.getKey().isComplete() ? entity.getKey().getId() : store.nextId();
+      store.put(id, comment);
+      stored.add(toEntity(id, comment));
+    }
+    return stored;
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids) throws IOException {
+    for (long id : ids) {
+      store.delete(id);
+    }
+  }
+
+  private static Entity toEntity(long id, StoredComment comment) {
+    Entity entity = new Entity("Comment", id);
+    entity.setProperty("email", comment.email);
+    entity.setProperty("nickname", comment.nickname);
+    entity.setProperty("text", comment.text);
+    entity.setProperty("timestamp", comment.timestamp);
+    if (comment.sentiment != null) {
+      entity.setProperty("sentiment", comment.sentiment);
+    }
+    return entity;
+  }
+}
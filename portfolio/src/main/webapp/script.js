@@ -47,25 +47,96 @@ function authenticateUser() {
     });
 }
 
+// Cursor of the next page of comments, or null once every comment is shown.
+let nextCommentsCursor = null;
+
 /**
- * Returns comments from the comments servlet, placing each comment as a new
- * list element in an unordered list. On error, displays a generic error message
- * instead.
+ * Returns the first page of comments from the comments servlet, placing each
+ * comment as a new list element in an unordered list. On error, displays a
+ * generic error message instead.
  */
 function getComments() {
-  fetch("/get-comments")
+  const params = new URLSearchParams();
+  params.append("page-size", document.getElementById("page-size").value);
+
+  fetch("/get-comments?" + params)
     .then(handleFetchErrors)
     .then(response => response.json())
-    .then(commentsInJson => {
-      const commentsList = document.getElementById("comments-list");
-      commentsInJson.forEach(comment => {
-        commentsList.appendChild(createCommentListItem(comment));
-      })
+    .then(commentsPage => {
+      document.getElementById("comments-list").innerHTML = "";
+      showCommentsPage(commentsPage);
     }).catch(error => {
       document.getElementById("comments-list").innerText = error;
   });
 }
 
+/**
+ * Returns the next page of older comments from the more comments servlet,
+ * appending them after the comments already shown.
+ */
+function loadMoreComments() {
+  const params = new URLSearchParams();
+  params.append("page-size", document.getElementById("page-size").value);
+  params.append("cursor", nextCommentsCursor);
+
+  fetch("/more-comments?" + params)
+    .then(handleFetchErrors)
+    .then(response => response.json())
+    .then(showCommentsPage)
+    .catch(error => {
+      document.getElementById("comments-list").innerText = error;
+  });
+}
+
+/**
+ * Appends a page of comments to the comments list, and shows the "Load more"
+ * button only if there are more comments to load.
+ *
+ * @param {JSON} commentsPage JSON containing the comments and next cursor.
+ */
+function showCommentsPage(commentsPage) {
+  const commentsList = document.getElementById("comments-list");
+  commentsPage.comments.forEach(comment => {
+    commentsList.appendChild(createCommentListItem(comment));
+  });
+
+  nextCommentsCursor = commentsPage.cursor;
+  const loadMoreButton = document.getElementById("load-more");
+  if (nextCommentsCursor === null) {
+    loadMoreButton.classList.add("hidden");
+  } else {
+    loadMoreButton.classList.remove("hidden");
+  }
+}
+
+/**
+ * Listens for comments being added or deleted by anyone, using server-sent
+ * events from the comment stream servlet. New comments are placed at the top of
+ * the comments list, and deleted comments are removed from it. When the stream
+ * reconnects too late to be sent the changes it missed, the comments are loaded
+ * again.
+ */
+function listenForCommentChanges() {
+  const commentStream = new EventSource("/comment-stream");
+
+  commentStream.addEventListener("added", event => {
+    const comment = JSON.parse(event.data);
+    if (document.getElementById("comment-" + comment.id) === null) {
+      const commentsList = document.getElementById("comments-list");
+      commentsList.insertBefore(createCommentListItem(comment), commentsList.firstChild);
+    }
+  });
+
+  commentStream.addEventListener("deleted", event => {
+    const deletedItem = document.getElementById("comment-" + JSON.parse(event.data).id);
+    if (deletedItem !== null) {
+      deletedItem.remove();
+    }
+  });
+
+  commentStream.addEventListener("reload", getComments);
+}
+
 /**
  * Returns the response if its HTTP status code is successful as given by its
  * "ok" flag. If not, throws a generic error message.
@@ -90,6 +161,7 @@ function createCommentListItem(comment) {
   // Create the list item.
   const listItem = document.createElement("li");
   listItem.className = "comment";
+  listItem.id = "comment-" + comment.id;
 
   // Create the comment text to put into the list item.
   const listText = document.createElement("span");
@@ -0,0 +1,81 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.counters;
+
+import com.google.appengine.api.LifecycleManager;
+import com.google.appengine.api.ThreadManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the flush tasks of the in-memory counters every {@code FLUSH_SECONDS} on one background
+ * thread, and once more when the instance shuts down.
+ *
+ * App Engine keeps a single shutdown hook per instance, so every counter registers here instead of
+ * setting its own. Background threads need basic or manual scaling.
+ */
+public final class Flusher {
+  private static final long FLUSH_SECONDS = 5;
+
+  private static final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+
+  // Started on first use. Only set while holding Flusher.class.
+  private static volatile ScheduledExecutorService flusher;
+
+  // Held while flushing, so that the background thread and the shutdown hook don't overlap.
+  private static final Object flushLock = new Object();
+
+  private Flusher() {
+    // Disallow instances.
+  }
+
+  /**
+   * Runs {@code task} periodically from now on. Tasks must catch their own exceptions, and are
+   * never run twice at once.
+   */
+  public static void register(Runnable task) {
+    tasks.add(task);
+    start();
+  }
+
+  private static void start() {
+    if (flusher != null) {
+      return;
+    }
+
+    synchronized (Flusher.class) {
+      if (flusher != null) {
+        return;
+      }
+      ScheduledExecutorService started =
+          Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+      started.scheduleWithFixedDelay(Flusher::flush, FLUSH_SECONDS, FLUSH_SECONDS,
+          TimeUnit.SECONDS);
+      LifecycleManager.getInstance().setShutdownHook(() -> flush());
+      flusher = started;
+    }
+  }
+
+  private static void flush() {
+    synchronized (flushLock) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+    }
+  }
+}
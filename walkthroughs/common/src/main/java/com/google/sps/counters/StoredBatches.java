@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.counters;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Adds batches of counts to counter entities in Datastore exactly once, however often a batch is
+ * retried.
+ *
+ * A commit that reports an error may still have been stored, so each batch has a sequence number,
+ * and the entity records the last one stored from this instance in the same transaction. A batch
+ * that fails to store should be retried until it is, with the same sequence number, and a retry
+ * that finds its sequence number already recorded adds nothing. Each instance must store one
+ * batch per entity at a time, in increasing sequence order.
+ */
+public final class StoredBatches {
+  private static final int MAX_COMMIT_ATTEMPTS = 3;
+  // Entities record the last batch stored from each instance in a property with this prefix.
+  private static final String STORED_BATCH_PREFIX = "storedBatch-";
+  // Records of instances that stored nothing for this long are removed from the entities.
+  private static final long STORED_BATCH_MILLIS = 24 * 60 * 60 * 1000L;
+
+  // Tells the batches of this instance apart from those of other instances.
+  private static final String STORED_BATCH_PROPERTY =
+      STORED_BATCH_PREFIX + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+  private StoredBatches() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the sequence number for the batch after the one numbered {@code lastSequence}. It is a
+   * time in milliseconds, so it keeps increasing across restarts.
+   */
+  public static long nextSequence(long lastSequence) {
+    return Math.max(lastSequence + 1, System.currentTimeMillis());
+  }
+
+  /**
+   * Adds {@code amount} to the {@code property} of the entity at {@code key}, creating it if
+   * needed, unless the entity shows the batch numbered {@code sequence} was already added.
+   *
+   * @return False if the entity could not be updated.
+   */
+  public static boolean add(DatastoreService datastore, Key key, String property, long amount,
+      long sequence) {
+    for (int attempt = 1; attempt <= MAX_COMMIT_ATTEMPTS; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity entity;
+        try {
+          entity = datastore.get(transaction, key);
+        } catch (EntityNotFoundException e) {
+          entity = new Entity(key);
+          entity.setProperty(property, 0L);
+        }
+        Long storedSequence = (Long) entity.getProperty(STORED_BATCH_PROPERTY);
+        if (storedSequence != null && storedSequence >= sequence) {
+          // An earlier attempt was stored even though its commit reported an error.
+          return true;
+        }
+
+        entity.setProperty(property, (Long) entity.getProperty(property) + amount);
+        entity.setUnindexedProperty(STORED_BATCH_PROPERTY, sequence);
+        removeOldBatchRecords(entity, sequence - STORED_BATCH_MILLIS);
+        datastore.put(transaction, entity);
+        transaction.commit();
+        return true;
+      } catch (ConcurrentModificationException e) {
+        // Another instance updated the same entity, or this commit was stored anyway. Try again,
+        // and the entity's record tells which.
+      } catch (RuntimeException e) {
+        System.err.println("Could not store batch for " + key + ": " + e);
+        return false;
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    System.err.println("Could not store batch for " + key + " after " + MAX_COMMIT_ATTEMPTS
+        + " attempts");
+    return false;
+  }
+
+  /**
+   * Removes the records of instances whose last batch is older than {@code cutoff}, so entities
+   * don't keep one for every instance that ever ran.
+   */
+  private static void removeOldBatchRecords(Entity entity, long cutoff) {
+    for (String property : new ArrayList<>(entity.getProperties().keySet())) {
+      if (property.startsWith(STORED_BATCH_PREFIX)
+          && (Long) entity.getProperty(property) < cutoff) {
+        entity.removeProperty(property);
+      }
+    }
+  }
+}
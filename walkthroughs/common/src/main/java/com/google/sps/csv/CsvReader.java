@@ -0,0 +1,393 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import javax.servlet.ServletContext;
+
+/**
+ * Reads comma separated data straight from bytes.
+ *
+ * Rows are found by scanning for line breaks, and numbers are parsed from the bytes of their field
+ * without creating a {@code String} or boxing them. A large file can be split into chunks at line
+ * breaks and parsed on several threads. Errors name the file and line they were found on.
+ *
+ * Fields are not unquoted, so this is only for simple data without commas inside fields. Blank
+ * lines are skipped, and "\r\n" line breaks are accepted as well as "\n".
+ */
+public final class CsvReader {
+  // Powers of ten that are exact doubles.
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+      1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  // Mantissas with more digits than this may not be exact doubles.
+  private static final int MAX_EXACT_DIGITS = 15;
+  // Data is not split into chunks smaller than this, since small chunks aren't worth a thread.
+  private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+  /** Handles the rows of one chunk, adding them to that chunk's result. */
+  public interface RowHandler<T> {
+    void handle(Row row, T result) throws IOException;
+  }
+
+  /**
+   * One line of the file. The same instance is reused for every line of a chunk, so it must not be
+   * kept after {@code RowHandler.handle} returns.
+   */
+  public static final class Row {
+    private final ByteBuffer data;
+    private int fieldCount;
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+
+    private Row(ByteBuffer data) {
+      this.data = data;
+    }
+
+    public int getFieldCount() {
+      return fieldCount;
+    }
+
+    /** Returns the field as a string. Only use this for fields that are not numbers. */
+    public String getString(int field) throws IOException {
+      checkField(field);
+      byte[] bytes = new byte[fieldEnds[field] - fieldStarts[field]];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = data.get(fieldStarts[field] + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getInt(int field) throws IOException {
+      long value = getLong(field);
+      if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        throw new IOException("Number out of range in field " + field + ": " + getString(field));
+      }
+      return (int) value;
+    }
+
+    public long getLong(int field) throws IOException {
+      checkField(field);
+      int position = fieldStarts[field];
+      int end = fieldEnds[field];
+      boolean negative = position < end && data.get(position) == '-';
+      if (position < end && (data.get(position) == '-' || data.get(position) == '+')) {
+        position++;
+      }
+      if (position == end) {
+        throw invalidNumber(field);
+      }
+
+      // Accumulate negatively so that Long.MIN_VALUE fits.
+      long value = 0;
+      for (; position < end; position++) {
+        int digit = data.get(position) - '0';
+        if (digit < 0 || digit > 9) {
+          throw invalidNumber(field);
+        }
+        if (value < (Long.MIN_VALUE + digit) / 10) {
+          throw new IOException("Number out of range in field " + field + ": " + getString(field));
+        }
+        value = value * 10 - digit;
+      }
+      if (!negative && value == Long.MIN_VALUE) {
+        throw new IOException("Number out of range in field " + field + ": " + getString(field));
+      }
+      return negative ? value : -value;
+    }
+
+    /**
+     * Returns the field as a double. Plain decimals with up to 15 significant digits and 22
+     * decimal places are computed directly with a single correctly rounded division. Anything else,
+     * including exponents and special values such as "NaN" and "-Infinity", falls back to
+     * {@code Double.parseDouble}.
+     */
+    public double getDouble(int field) throws IOException {
+      checkField(field);
+      int position = fieldStarts[field];
+      int end = fieldEnds[field];
+      boolean negative = position < end && data.get(position) == '-';
+      if (position < end && (data.get(position) == '-' || data.get(position) == '+')) {
+        position++;
+      }
+
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean sawDigit = false;
+      boolean sawPoint = false;
+      for (; position < end; position++) {
+        byte b = data.get(position);
+        if (b == '.' && !sawPoint) {
+          sawPoint = true;
+          continue;
+        }
+        int digit = b - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        sawDigit = true;
+        if (mantissa != 0 || digit != 0) {
+          digits++;
+        }
+        if (digits <= MAX_EXACT_DIGITS) {
+          mantissa = mantissa * 10 + digit;
+          if (sawPoint) {
+            exponent--;
+          }
+        }
+      }
+      if (!sawDigit || position < end || digits > MAX_EXACT_DIGITS
+          || -exponent >= POWERS_OF_TEN.length) {
+        // Exponents, very long mantissas and special values take the slow path, which also rejects
+        // fields that are not numbers at all.
+        try {
+          return Double.parseDouble(getString(field));
+        } catch (NumberFormatException e) {
+          throw invalidNumber(field);
+        }
+      }
+
+      double value = mantissa / POWERS_OF_TEN[-exponent];
+      return negative ? -value : value;
+    }
+
+    private void checkField(int field) throws IOException {
+      if (field < 0 || field >= fieldCount) {
+        throw new IOException("Expected at least " + (field + 1) + " fields but found "
+            + fieldCount);
+      }
+    }
+
+    private IOException invalidNumber(int field) throws IOException {
+      return new IOException("Invalid number in field " + field + ": \"" + getString(field) + "\"");
+    }
+
+    /** Splits the line between {@code start} and {@code end} into fields. */
+    private void setLine(int start, int end) {
+      fieldCount = 0;
+      int fieldStart = start;
+      for (int position = start; position <= end; position++) {
+        if (position == end || data.get(position) == ',') {
+          if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+          }
+          fieldStarts[fieldCount] = fieldStart;
+          fieldEnds[fieldCount] = position;
+          fieldCount++;
+          fieldStart = position + 1;
+        }
+      }
+    }
+  }
+
+  /** The result of parsing one chunk. */
+  private static final class Chunk<T> {
+    private final T result;
+    private final int lineCount;
+    // The line within the chunk and the problem found on it, or null if there was none.
+    private final int errorLine;
+    private final IOException error;
+
+    private Chunk(T result, int lineCount, int errorLine, IOException error) {
+      this.result = result;
+      this.lineCount = lineCount;
+      this.errorLine = errorLine;
+      this.error = error;
+    }
+  }
+
+  private final String name;
+  private final ByteBuffer data;
+
+  /**
+   * @param name The name of the data, used in error messages.
+   * @param data The bytes to parse, from position 0 to the limit.
+   */
+  public CsvReader(String name, ByteBuffer data) {
+    this.name = name;
+    this.data = data;
+  }
+
+  /**
+   * Opens a file in the web application. The file is memory-mapped if it is unpacked on disk, and
+   * read into memory otherwise.
+   *
+   * @param path The path of the file within the web application, e.g. "/WEB-INF/data.csv".
+   */
+  public static CsvReader open(ServletContext context, String path) throws IOException {
+    String realPath = context.getRealPath(path);
+    if (realPath != null) {
+      try (FileChannel channel =
+          FileChannel.open(Paths.get(realPath), StandardOpenOption.READ)) {
+        return new CsvReader(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+
+    InputStream in = context.getResourceAsStream(path);
+    if (in == null) {
+      throw new IOException("Could not find " + path);
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1 << 16];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        bytes.write(buffer, 0, read);
+      }
+      return new CsvReader(path, ByteBuffer.wrap(bytes.toByteArray()));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Parses every row on the calling thread.
+   *
+   * @param result Passed to the handler along with each row.
+   */
+  public <T> T parse(T result, RowHandler<T> handler) throws IOException {
+    Chunk<T> chunk = parseChunk(0, data.limit(), result, handler);
+    throwIfFailed(chunk, 0);
+    return result;
+  }
+
+  /**
+   * Splits the data into up to {@code chunkCount} chunks of at least a megabyte at line breaks and
+   * parses them on as many threads. Each chunk gets its own result, so the handler needs no locking.
+   *
+   * @param newResult Creates the result of each chunk.
+   * @return The result of each chunk, in the order of the chunks in the data.
+   */
+  public <T> List<T> parseInChunks(int chunkCount, Supplier<T> newResult, RowHandler<T> handler)
+      throws IOException {
+    chunkCount = Math.min(chunkCount, Math.max(1, data.limit() / MIN_CHUNK_BYTES));
+    if (chunkCount == 1) {
+      return Collections.singletonList(parse(newResult.get(), handler));
+    }
+
+    List<Integer> boundaries = new ArrayList<>();
+    boundaries.add(0);
+    for (int i = 1; i < chunkCount; i++) {
+      int boundary = Math.max(findLineStart((int) ((long) data.limit() * i / chunkCount)),
+          boundaries.get(boundaries.size() - 1));
+      if (boundary < data.limit()) {
+        boundaries.add(boundary);
+      }
+    }
+    boundaries.add(data.limit());
+
+    ExecutorService executor = Executors.newFixedThreadPool(boundaries.size() - 1);
+    try {
+      List<Future<Chunk<T>>> pending = new ArrayList<>();
+      for (int i = 0; i + 1 < boundaries.size(); i++) {
+        int start = boundaries.get(i);
+        int end = boundaries.get(i + 1);
+        pending.add(executor.submit(() -> parseChunk(start, end, newResult.get(), handler)));
+      }
+
+      List<T> results = new ArrayList<>();
+      int linesBefore = 0;
+      for (Future<Chunk<T>> future : pending) {
+        Chunk<T> chunk = await(future);
+        throwIfFailed(chunk, linesBefore);
+        results.add(chunk.result);
+        linesBefore += chunk.lineCount;
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Parses the lines between {@code start}, which must be the start of a line, and {@code end}.
+   * Problems with a row are returned in the chunk rather than thrown, since the line number in the
+   * file depends on the chunks before this one.
+   */
+  private <T> Chunk<T> parseChunk(int start, int end, T result, RowHandler<T> handler) {
+    Row row = new Row(data);
+    int lineNumber = 0;
+    int lineStart = start;
+    while (lineStart < end) {
+      lineNumber++;
+      int lineEnd = lineStart;
+      while (lineEnd < end && data.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+      int next = lineEnd + 1;
+      if (lineEnd > lineStart && data.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+
+      if (lineEnd > lineStart) {
+        row.setLine(lineStart, lineEnd);
+        try {
+          handler.handle(row, result);
+        } catch (IOException e) {
+          return new Chunk<>(result, lineNumber, lineNumber, e);
+        }
+      }
+      lineStart = next;
+    }
+    return new Chunk<>(result, lineNumber, 0, null);
+  }
+
+  private void throwIfFailed(Chunk<?> chunk, int linesBefore) throws IOException {
+    if (chunk.error != null) {
+      throw new IOException(
+          name + ", line " + (linesBefore + chunk.errorLine) + ": " + chunk.error.getMessage(),
+          chunk.error);
+    }
+  }
+
+  /** Returns the start of the first line at or after {@code position}. */
+  private int findLineStart(int position) {
+    if (position == 0) {
+      return 0;
+    }
+    while (position < data.limit() && data.get(position - 1) != '\n') {
+      position++;
+    }
+    return position;
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not parse", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,418 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.logstore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * An embedded store of values by numeric id, kept in a single append-only log file.
+ *
+ * Every put or delete appends a record to the end of the log, and an in-memory index maps each
+ * live id to the offset of its latest record, so a read is one positional read from the file. The
+ * index also keeps ids in descending order of a sort key taken from each value, so the newest
+ * values can be listed a page at a time without reading the rest.
+ *
+ * Opening the store replays the log to rebuild the index, dropping a final record cut short by a
+ * crash. When most of the log is superseded records, it is first rewritten with only the live ones,
+ * behind a record of the largest id ever used so that ids of dropped values are never reused.
+ * Writes are not forced to disk, so they survive the process dying but not the machine.
+ */
+public final class LogStore<T> implements Closeable {
+  /** Converts values to and from bytes. */
+  public interface Codec<T> {
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+  }
+
+  /** A live value along with its id and the cursor just after it in sort order. */
+  public static final class Record<T> {
+    private final long id;
+    private final T value;
+    private final String cursor;
+
+    private Record(long id, T value, String cursor) {
+      this.id = id;
+      this.value = value;
+      this.cursor = cursor;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    public String getCursor() {
+      return cursor;
+    }
+  }
+
+  /** Where the latest record of a live id is. */
+  private static final class Location {
+    private final long offset;
+    private final int length;
+    private final long sortKey;
+
+    private Location(long offset, int length, long sortKey) {
+      this.offset = offset;
+      this.length = length;
+      this.sortKey = sortKey;
+    }
+  }
+
+  /** An id's place in sort order. */
+  private static final class Position {
+    private final long sortKey;
+    private final long id;
+
+    private Position(long sortKey, long id) {
+      this.sortKey = sortKey;
+      this.id = id;
+    }
+
+    private String toCursor() {
+      return sortKey + ":" + id;
+    }
+
+    private static Position fromCursor(String cursor) {
+      int separator = cursor.indexOf(':');
+      if (separator == -1) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+      try {
+        return new Position(Long.parseLong(cursor.substring(0, separator)),
+            Long.parseLong(cursor.substring(separator + 1)));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+    }
+  }
+
+  // Largest sort key first, then largest id.
+  private static final Comparator<Position> DESCENDING =
+      Comparator.comparingLong((Position position) -> position.sortKey)
+          .thenComparingLong(position -> position.id)
+          .reversed();
+
+  private static final byte PUT = 1;
+  private static final byte DELETE = 0;
+  // Marks the record's id as used without storing anything under it.
+  private static final byte LAST_ID = 2;
+  // Payload length, id and record type.
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + 1;
+  // Logs smaller than this are never compacted.
+  private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+  private final Path path;
+  private final Codec<T> codec;
+  private final ToLongFunction<T> sortKey;
+  private final Map<Long, Location> index = new ConcurrentHashMap<>();
+  private final NavigableSet<Position> order = new ConcurrentSkipListSet<>(DESCENDING);
+  private final AtomicLong lastId = new AtomicLong();
+
+  // Only replaced while opening, before the store is shared.
+  private FileChannel channel;
+  // Guarded by this.
+  private long end;
+
+  private LogStore(Path path, Codec<T> codec, ToLongFunction<T> sortKey) {
+    this.path = path;
+    this.codec = codec;
+    this.sortKey = sortKey;
+  }
+
+  /**
+   * Opens the store kept in {@code path}, creating it if it doesn't exist.
+   *
+   * @param codec Converts values to and from bytes.
+   * @param sortKey The key values are listed by, largest first.
+   */
+  public static <T> LogStore<T> open(Path path, Codec<T> codec, ToLongFunction<T> sortKey)
+      throws IOException {
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    LogStore<T> store = new LogStore<>(path, codec, sortKey);
+    store.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    long liveBytes = store.replay();
+    if (store.end > MIN_COMPACTION_BYTES && store.end > 2 * liveBytes) {
+      store.compact();
+    }
+    return store;
+  }
+
+  /**
+   * Returns an id that has never been used in this store.
+   */
+  public long nextId() {
+    return lastId.incrementAndGet();
+  }
+
+  /**
+   * Returns the value stored under {@code id}, or null if there is none.
+   */
+  public T get(long id) throws IOException {
+    Location location = index.get(id);
+    return location == null ? null : read(location);
+  }
+
+  /**
+   * Stores {@code value} under {@code id}, replacing any value already there.
+   */
+  public synchronized void put(long id, T value) throws IOException {
+    byte[] payload = encode(value);
+    long offset = append(id, PUT, payload);
+
+    Location location = new Location(offset, payload.length, sortKey.applyAsLong(value));
+    Location previous = index.put(id, location);
+    if (previous != null && previous.sortKey != location.sortKey) {
+      order.remove(new Position(previous.sortKey, id));
+    }
+    order.add(new Position(location.sortKey, id));
+    lastId.accumulateAndGet(id, Math::max);
+  }
+
+  /**
+   * Deletes the value stored under {@code id}, if any.
+   */
+  public synchronized void delete(long id) throws IOException {
+    Location previous = index.get(id);
+    if (previous == null) {
+      return;
+    }
+
+    append(id, DELETE, new byte[0]);
+    index.remove(id);
+    order.remove(new Position(previous.sortKey, id));
+  }
+
+  /**
+   * Returns up to {@code limit} values in descending sort key order.
+   *
+   * @param afterCursor The cursor of the record to start after, or null to start at the beginning.
+   * @throws IllegalArgumentException If the cursor is not one returned by this store.
+   */
+  public List<Record<T>> list(String afterCursor, int limit) throws IOException {
+    NavigableSet<Position> positions =
+        afterCursor == null ? order : order.tailSet(Position.fromCursor(afterCursor), false);
+
+    List<Record<T>> records = new ArrayList<>();
+    for (Position position : positions) {
+      if (records.size() == limit) {
+        break;
+      }
+      Location location = index.get(position.id);
+      if (location == null || location.sortKey != position.sortKey) {
+        // Deleted or moved since the iteration started.
+        continue;
+      }
+      records.add(new Record<>(position.id, read(location), position.toCursor()));
+    }
+    return records;
+  }
+
+  /**
+   * Returns the id of every live value, in no particular order.
+   */
+  public List<Long> ids() {
+    return new ArrayList<>(index.keySet());
+  }
+
+  /**
+   * Returns the number of live values.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.force(false);
+    channel.close();
+  }
+
+  /**
+   * Appends a record to the log and returns its offset.
+   */
+  private long append(long id, byte type, byte[] payload) throws IOException {
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+    record.putInt(payload.length).putLong(id).put(type).put(payload);
+    record.flip();
+
+    long offset = end;
+    writeFully(channel, record, offset);
+    end += record.limit();
+    return offset;
+  }
+
+  private T read(Location location) throws IOException {
+    ByteBuffer payload = ByteBuffer.allocate(location.length);
+    readFully(channel, payload, location.offset + HEADER_SIZE);
+    return decode(payload.array());
+  }
+
+  private byte[] encode(T value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    codec.write(out, value);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private T decode(byte[] payload) throws IOException {
+    return codec.read(new DataInputStream(new ByteArrayInputStream(payload)));
+  }
+
+  /**
+   * Rebuilds the index from the log and returns the number of bytes held by live records.
+   */
+  private long replay() throws IOException {
+    long offset = 0;
+    long size = channel.size();
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    try {
+      while (true) {
+        int length;
+        long id;
+        byte type;
+        byte[] payload;
+        try {
+          length = in.readInt();
+          id = in.readLong();
+          type = in.readByte();
+          // A corrupt length must not allocate more than the rest of the log could hold.
+          if (length < 0 || length > size - offset - HEADER_SIZE
+              || (type != PUT && type != DELETE && type != LAST_ID)) {
+            break;
+          }
+          payload = new byte[length];
+          in.readFully(payload);
+        } catch (EOFException e) {
+          break;
+        }
+
+        long recordOffset = offset;
+        offset += HEADER_SIZE + length;
+        lastId.accumulateAndGet(id, Math::max);
+        if (type == LAST_ID) {
+          continue;
+        }
+
+        Location previous = index.remove(id);
+        if (previous != null) {
+          order.remove(new Position(previous.sortKey, id));
+        }
+        if (type == PUT) {
+          long key = sortKey.applyAsLong(decode(payload));
+          index.put(id, new Location(recordOffset, length, key));
+          order.add(new Position(key, id));
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    // Drop whatever follows the last whole record, such as a record cut short by a crash.
+    channel.truncate(offset);
+    end = offset;
+
+    long liveBytes = 0;
+    for (Location location : index.values()) {
+      liveBytes += HEADER_SIZE + location.length;
+    }
+    return liveBytes;
+  }
+
+  /**
+   * Rewrites the log with a record of the largest id used, followed by the latest record of each
+   * live id.
+   */
+  private void compact() throws IOException {
+    Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+    Map<Long, Location> moved = new HashMap<>();
+    long offset = 0;
+    try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer lastIdRecord = ByteBuffer.allocate(HEADER_SIZE);
+      lastIdRecord.putInt(0).putLong(lastId.get()).put(LAST_ID);
+      lastIdRecord.flip();
+      writeFully(out, lastIdRecord, offset);
+      offset += lastIdRecord.limit();
+
+      for (Map.Entry<Long, Location> entry : index.entrySet()) {
+        Location location = entry.getValue();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + location.length);
+        readFully(channel, record, location.offset);
+        record.flip();
+        writeFully(out, record, offset);
+        moved.put(entry.getKey(), new Location(offset, location.length, location.sortKey));
+        offset += record.limit();
+      }
+      out.force(true);
+    }
+
+    channel.close();
+    Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    index.putAll(moved);
+    end = offset;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset + buffer.position());
+      if (read == -1) {
+        throw new EOFException("Record at " + offset + " runs past the end of the log");
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, offset + buffer.position());
+    }
+  }
+}
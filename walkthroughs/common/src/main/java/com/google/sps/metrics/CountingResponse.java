@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Wraps a response to count the size of its body: the bytes written to its output stream plus the
+ * characters written to its writer. Characters are counted rather than encoded bytes, so that
+ * counting never has to encode anything twice.
+ */
+final class CountingResponse extends HttpServletResponseWrapper {
+  // Async requests may write from other threads.
+  private final AtomicLong size = new AtomicLong();
+
+  // Created on first use.
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  CountingResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  /** Returns the number of bytes and characters written to the body so far. */
+  long getSize() {
+    return size.get();
+  }
+
+  @Override
+  public synchronized ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new CountingOutputStream(super.getOutputStream());
+    }
+    return outputStream;
+  }
+
+  @Override
+  public synchronized PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      writer = new CountingWriter(super.getWriter());
+    }
+    return writer;
+  }
+
+  private final class CountingOutputStream extends ServletOutputStream {
+    private final ServletOutputStream out;
+
+    private CountingOutputStream(ServletOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      size.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      size.addAndGet(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      out.setWriteListener(listener);
+    }
+  }
+
+  private final class CountingWriter extends PrintWriter {
+    private final PrintWriter out;
+
+    private CountingWriter(PrintWriter out) {
+      super(out);
+      this.out = out;
+    }
+
+    @Override
+    public void write(int c) {
+      super.write(c);
+      size.incrementAndGet();
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+      super.write(buf, off, len);
+      size.addAndGet(len);
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+      super.write(s, off, len);
+      size.addAndGet(len);
+    }
+
+    @Override
+    public void println() {
+      // PrintWriter writes line separators straight to the wrapped writer, bypassing write.
+      super.println();
+      size.addAndGet(System.lineSeparator().length());
+    }
+
+    @Override
+    public boolean checkError() {
+      // The wrapped writer swallows its own errors, so ask it as well as this one.
+      return super.checkError() || out.checkError();
+    }
+  }
+}
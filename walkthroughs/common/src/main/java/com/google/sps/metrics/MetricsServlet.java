@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exports the metrics in {@code RequestMetrics} in the Prometheus text format, so that they can be
+ * scraped by Prometheus or read as they are. It is mapped to /metrics by this jar's
+ * web-fragment.xml.
+ */
+public final class MetricsServlet extends HttpServlet {
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+    PrintWriter out = response.getWriter();
+    Map<String, RequestMetrics.Route> routes = RequestMetrics.getRoutes();
+
+    out.println("# HELP http_requests_total Requests since the instance started.");
+    out.println("# TYPE http_requests_total counter");
+    for (Map.Entry<String, RequestMetrics.Route> entry : routes.entrySet()) {
+      for (int i = 0; i < STATUS_CLASSES.length; i++) {
+        long count = entry.getValue().getStatusCount(i);
+        if (count > 0) {
+          out.println("http_requests_total{route=\"" + escape(entry.getKey()) + "\",status=\""
+              + STATUS_CLASSES[i] + "\"} " + count);
+        }
+      }
+    }
+
+    out.println("# HELP http_requests_per_second Requests per second over the last minute.");
+    out.println("# TYPE http_requests_per_second gauge");
+    for (Map.Entry<String, RequestMetrics.Route> entry : routes.entrySet()) {
+      out.println("http_requests_per_second{route=\"" + escape(entry.getKey()) + "\"} "
+          + entry.getValue().getPerSecond());
+    }
+
+    out.println("# HELP http_request_duration_seconds Request latency.");
+    out.println("# TYPE http_request_duration_seconds summary");
+    for (Map.Entry<String, RequestMetrics.Route> entry : routes.entrySet()) {
+      writeSummary(out, "http_request_duration_seconds", entry.getKey(),
+          entry.getValue().getLatency(), 1e-6);
+    }
+
+    out.println("# HELP http_response_size_bytes Response body size.");
+    out.println("# TYPE http_response_size_bytes summary");
+    for (Map.Entry<String, RequestMetrics.Route> entry : routes.entrySet()) {
+      writeSummary(out, "http_response_size_bytes", entry.getKey(), entry.getValue().getSize(), 1);
+    }
+  }
+
+  /**
+   * Writes the quantiles, sum and count of {@code histogram}, with each value multiplied by
+   * {@code scale}.
+   */
+  private void writeSummary(PrintWriter out, String name, String route,
+      Histogram.Snapshot histogram, double scale) {
+    String label = "route=\"" + escape(route) + "\"";
+    for (double quantile : QUANTILES) {
+      out.println(name + "{" + label + ",quantile=\"" + quantile + "\"} "
+          + histogram.getPercentile(quantile * 100) * scale);
+    }
+    out.println(name + "_sum{" + label + "} " + histogram.getSum() * scale);
+    out.println(name + "_count{" + label + "} " + histogram.getCount());
+  }
+
+  /** Escapes a label value as the text format requires. */
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in each of the last {@code WINDOW_SECONDS} seconds, to report a current rate
+ * instead of an average since startup.
+ *
+ * The counts live in a ring with a slot per second, each stamped with the second it counts. The
+ * first event of a new second resets its slot. Two threads can both reset the same slot when a
+ * second starts, losing an event or two, which is fine for a rate.
+ */
+public final class RecentRate {
+  private static final int WINDOW_SECONDS = 60;
+
+  private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+  private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+  /** Counts one event now. */
+  public void record() {
+    long second = System.currentTimeMillis() / 1000;
+    int slot = (int) (second % WINDOW_SECONDS);
+    long stamped = seconds.get(slot);
+    if (stamped != second && seconds.compareAndSet(slot, stamped, second)) {
+      counts.set(slot, 0);
+    }
+    counts.incrementAndGet(slot);
+  }
+
+  /** Returns the average number of events per second over the last minute. */
+  public double getPerSecond() {
+    long now = System.currentTimeMillis() / 1000;
+    long events = 0;
+    for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+      if (now - seconds.get(slot) < WINDOW_SECONDS) {
+        events += counts.get(slot);
+      }
+    }
+    return (double) events / WINDOW_SECONDS;
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The request counts, rates, status codes, latencies and response sizes of each route served by
+ * this instance, as recorded by {@code RequestMetricsFilter}.
+ *
+ * Each route has a fixed number of {@code RouteRecorder} stripes, and each thread records into the
+ * stripe its id picks, so concurrent requests rarely write to the same counters while the memory
+ * used stays fixed however many threads there are. Reads merge the stripes of each route.
+ */
+public final class RequestMetrics {
+  // Requests beyond this many distinct routes are all counted under OTHER_ROUTE, so that stray
+  // paths can't grow the recorders without bound.
+  private static final int MAX_ROUTES = 100;
+  private static final String OTHER_ROUTE = "(other)";
+  // A power of two, so that a thread's stripe is a mask of its id.
+  private static final int STRIPE_COUNT = 4;
+
+  /** The merged metrics of one route. */
+  public static final class Route {
+    private final Histogram.Snapshot latency = new Histogram.Snapshot();
+    private final Histogram.Snapshot size = new Histogram.Snapshot();
+    private final long[] statusClasses = new long[6];
+    private double perSecond;
+
+    void add(Histogram.Snapshot latency, Histogram.Snapshot size, long[] statusClasses,
+        double perSecond) {
+      this.latency.add(latency);
+      this.size.add(size);
+      for (int i = 0; i < statusClasses.length; i++) {
+        this.statusClasses[i] += statusClasses[i];
+      }
+      this.perSecond += perSecond;
+    }
+
+    /** Returns the number of requests since the instance started. */
+    public long getCount() {
+      return latency.getCount();
+    }
+
+    /** Returns the requests per second over the last minute. */
+    public double getPerSecond() {
+      return perSecond;
+    }
+
+    /**
+     * Returns the number of responses whose status code starts with {@code firstDigit}, e.g. 5 for
+     * server errors. 0 counts status codes outside 100 to 599.
+     */
+    public long getStatusCount(int firstDigit) {
+      return statusClasses[firstDigit];
+    }
+
+    /** Returns the latency of every request, in microseconds. */
+    public Histogram.Snapshot getLatency() {
+      return latency;
+    }
+
+    /**
+     * Returns the size of every response body: bytes written to the output stream plus characters
+     * written to the writer.
+     */
+    public Histogram.Snapshot getSize() {
+      return size;
+    }
+  }
+
+  // The recorder stripes of each route.
+  private static final Map<String, RouteRecorder[]> routes = new ConcurrentHashMap<>();
+
+  private RequestMetrics() {
+    // Disallow instances.
+  }
+
+  /**
+   * Records a request to {@code route}.
+   *
+   * @param bytes The size of the response body.
+   */
+  static void record(String route, long latencyMicros, int status, long bytes) {
+    RouteRecorder[] stripes = routes.get(route);
+    if (stripes == null) {
+      if (routes.size() >= MAX_ROUTES) {
+        route = OTHER_ROUTE;
+      }
+      stripes = routes.computeIfAbsent(route, key -> newStripes());
+    }
+    int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+    stripes[stripe].record(latencyMicros, status, bytes);
+  }
+
+  private static RouteRecorder[] newStripes() {
+    RouteRecorder[] stripes = new RouteRecorder[STRIPE_COUNT];
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes[i] = new RouteRecorder();
+    }
+    return stripes;
+  }
+
+  /** Returns the merged metrics of every route, sorted by route. */
+  public static Map<String, Route> getRoutes() {
+    Map<String, Route> merged = new TreeMap<>();
+    routes.forEach((route, stripes) -> {
+      Route metrics = new Route();
+      for (RouteRecorder stripe : stripes) {
+        stripe.addTo(metrics);
+      }
+      merged.put(route, metrics);
+    });
+    return Collections.unmodifiableMap(merged);
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records the latency, status code and response size of every request in {@code RequestMetrics}
+ * under its servlet path, e.g. "/markers", without any changes to the servlets themselves. It is
+ * mapped to every path by this jar's web-fragment.xml.
+ *
+ * Requests that no servlet is mapped to, which the container's default servlet answers, are all
+ * recorded under {@code STATIC_ROUTE}, and every 404 response under {@code NOT_FOUND_ROUTE}. So
+ * requests for made-up paths can't use up the routes {@code RequestMetrics} keeps.
+ *
+ * Requests that go async are recorded when their async context completes, so that the latency and
+ * size cover the work done after the servlet returned.
+ */
+public final class RequestMetricsFilter implements Filter {
+  static final String STATIC_ROUTE = "(static)";
+  static final String NOT_FOUND_ROUTE = "(not found)";
+
+  // The servlet paths of exact and prefix mappings, e.g. "/markers" for "/markers/*", and the
+  // extensions of extension mappings, e.g. ".jsp". Null if the mappings aren't known, in which case
+  // every servlet path is its own route.
+  private Set<String> servletPaths;
+  private Set<String> extensions;
+
+  /** Makes {@code startAsync()} keep the counting response instead of the original one. */
+  private static final class CountingRequest extends HttpServletRequestWrapper {
+    private final CountingResponse response;
+
+    private CountingRequest(HttpServletRequest request, CountingResponse response) {
+      super(request);
+      this.response = response;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+      return startAsync(this, response);
+    }
+  }
+
+  /** Records an async request once it completes. */
+  private static final class AsyncRecorder implements AsyncListener {
+    private final String route;
+    private final long start;
+    private final CountingResponse response;
+
+    private AsyncRecorder(String route, long start, CountingResponse response) {
+      this.route = route;
+      this.start = start;
+      this.response = response;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      record(route, start, response.getStatus(), response);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {}
+
+    @Override
+    public void onError(AsyncEvent event) {}
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // Dispatching starts a new async cycle, which drops the listeners of the last one.
+      event.getAsyncContext().addListener(this);
+    }
+  }
+
+  @Override
+  public void init(FilterConfig config) {
+    servletPaths = new HashSet<>();
+    extensions = new HashSet<>();
+    for (ServletRegistration servlet :
+        config.getServletContext().getServletRegistrations().values()) {
+      for (String mapping : servlet.getMappings()) {
+        if (mapping.startsWith("*.")) {
+          extensions.add(mapping.substring(1));
+        } else if (mapping.endsWith("/*")) {
+          servletPaths.add(mapping.substring(0, mapping.length() - 2));
+        } else if (!mapping.equals("/")) {
+          servletPaths.add(mapping);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    long start = System.nanoTime();
+    String route = getRoute(((HttpServletRequest) request).getServletPath());
+    CountingResponse countingResponse = new CountingResponse((HttpServletResponse) response);
+    CountingRequest countingRequest =
+        new CountingRequest((HttpServletRequest) request, countingResponse);
+
+    boolean failed = true;
+    try {
+      chain.doFilter(countingRequest, countingResponse);
+      failed = false;
+    } finally {
+      if (countingRequest.isAsyncStarted()) {
+        countingRequest.getAsyncContext()
+            .addListener(new AsyncRecorder(route, start, countingResponse));
+      } else {
+        // The container turns an exception into a 500 after the filter has returned.
+        int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+            : countingResponse.getStatus();
+        record(route, start, status, countingResponse);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns the route to record a request to {@code servletPath} under. */
+  private String getRoute(String servletPath) {
+    if (servletPaths == null || servletPaths.contains(servletPath)) {
+      return servletPath;
+    }
+    int dot = servletPath.lastIndexOf('.');
+    if (dot >= 0 && extensions.contains(servletPath.substring(dot))) {
+      return servletPath;
+    }
+    return STATIC_ROUTE;
+  }
+
+  private static void record(String route, long start, int status, CountingResponse response) {
+    if (status == HttpServletResponse.SC_NOT_FOUND) {
+      route = NOT_FOUND_ROUTE;
+    }
+    RequestMetrics.record(route, (System.nanoTime() - start) / 1000, status, response.getSize());
+  }
+}
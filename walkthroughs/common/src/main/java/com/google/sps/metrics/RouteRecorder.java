@@ -0,0 +1,45 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The metrics of one route recorded by the threads of one stripe. Its counters are atomic, so any
+ * number of threads may record into it and read it at once.
+ */
+final class RouteRecorder {
+  private final Histogram latency = new Histogram();
+  private final Histogram size = new Histogram();
+  // Indexed by the first digit of the status code, with 0 for codes outside 100 to 599.
+  private final AtomicLongArray statusClasses = new AtomicLongArray(6);
+  private final RecentRate rate = new RecentRate();
+
+  void record(long latencyMicros, int status, long bytes) {
+    latency.record(latencyMicros);
+    size.record(bytes);
+    statusClasses.incrementAndGet(status >= 100 && status < 600 ? status / 100 : 0);
+    rate.record();
+  }
+
+  /** Adds everything recorded so far to {@code route}. */
+  void addTo(RequestMetrics.Route route) {
+    long[] statuses = new long[statusClasses.length()];
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = statusClasses.get(i);
+    }
+    route.add(latency.getSnapshot(), size.getSnapshot(), statuses, rate.getPerSecond());
+  }
+}
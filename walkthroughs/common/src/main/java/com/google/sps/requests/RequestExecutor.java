@@ -0,0 +1,129 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.requests;
+
+import com.google.apphosting.api.ApiProxy;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Runs request handlers that block on Datastore or Cloud API calls.
+ *
+ * In "async" mode, the handler is moved off the container's request thread onto a small worker
+ * pool using the servlet async API, so slow backends queue requests here instead of using up the
+ * container's threads. The pool size is the limit on concurrent downstream calls. When more than
+ * {@code MAX_QUEUED_REQUESTS} handlers are already waiting for a worker, the request is answered
+ * with a 503 straight away. In "inline" mode, the handler simply runs on the request thread.
+ *
+ * The mode and limit are read from the "sps.requestExecution" and "sps.downstreamConcurrency"
+ * system properties, set in appengine-web.xml. Servlets using async mode must be declared with
+ * {@code asyncSupported = true}.
+ *
+ * App Engine API calls find the request they belong to through the {@code ApiProxy.Environment}
+ * of the calling thread, which worker threads don't have. Each handler therefore runs with the
+ * environment of the request thread that submitted it, and the worker clears it again afterwards,
+ * so an environment never leaks into the next request the worker runs. Webapps using this class
+ * must depend on the App Engine API jar.
+ *
+ * The App Engine java8 runtime has no virtual threads, so this is the closest equivalent: request
+ * threads are freed while the handler waits on the backend.
+ */
+public final class RequestExecutor {
+  private static final String ASYNC_MODE = "async";
+  // Requests beyond this many waiting handlers are turned away rather than queued.
+  private static final int MAX_QUEUED_REQUESTS = 1000;
+  // How long a request may wait and run before the container times it out.
+  private static final long ASYNC_TIMEOUT_MILLIS = 30000;
+
+  private static final RequestExecutor configured = new RequestExecutor(
+      ASYNC_MODE.equals(System.getProperty("sps.requestExecution", ASYNC_MODE)),
+      Integer.getInteger("sps.downstreamConcurrency", 16), MAX_QUEUED_REQUESTS);
+
+  /** The blocking part of a servlet's request handling. */
+  @FunctionalInterface
+  public interface Handler {
+    void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+  }
+
+  private final boolean async;
+  private final ThreadPoolExecutor workers;
+
+  RequestExecutor(boolean async, int concurrency, int maxQueuedRequests) {
+    this.async = async;
+    workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(maxQueuedRequests), runnable -> {
+          Thread thread = new Thread(runnable, "request-worker");
+          thread.setDaemon(true);
+          return thread;
+        });
+    workers.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Runs {@code handler} for the given request according to the configured execution mode.
+   */
+  public static void execute(HttpServletRequest request, HttpServletResponse response,
+      Handler handler) throws IOException {
+    configured.run(request, response, handler);
+  }
+
+  void run(HttpServletRequest request, HttpServletResponse response, Handler handler)
+      throws IOException {
+    if (!async || !request.isAsyncSupported()) {
+      handler.handle(request, response);
+      return;
+    }
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(ASYNC_TIMEOUT_MILLIS);
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+
+    try {
+      workers.execute(() -> {
+        HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        try {
+          handler.handle((HttpServletRequest) asyncContext.getRequest(), asyncResponse);
+        } catch (IOException | RuntimeException e) {
+          System.err.println("Request handler failed: " + e);
+          sendErrorIfPossible(asyncResponse, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+          ApiProxy.clearEnvironmentForCurrentThread();
+          asyncContext.complete();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      sendErrorIfPossible(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      asyncContext.complete();
+    }
+  }
+
+  private static void sendErrorIfPossible(HttpServletResponse response, int status) {
+    if (response.isCommitted()) {
+      return;
+    }
+    try {
+      response.sendError(status);
+    } catch (IOException e) {
+      System.err.println("Could not send error response: " + e);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.cloud.language.v1.Sentiment;
+import java.io.IOException;
+
+/**
+ * Scores sentiment with the Cloud Natural Language API. The client is created on first use and
+ * shared by every call afterwards.
+ */
+public final class CloudSentimentScorer implements SentimentScorer {
+  // Created on first use. Guarded by this.
+  private LanguageServiceClient client;
+
+  @Override
+  public float score(String text) throws IOException {
+    Document doc = Document.newBuilder().setContent(text).setType(Document.Type.PLAIN_TEXT).build();
+    Sentiment sentiment = getClient().analyzeSentiment(doc).getDocumentSentiment();
+    return sentiment.getScore();
+  }
+
+  private synchronized LanguageServiceClient getClient() throws IOException {
+    if (client == null) {
+      client = LanguageServiceClient.create();
+    }
+    return client;
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scores sentiment with a primary scorer, falling back to a secondary scorer when the primary one
+ * fails or doesn't answer within a latency budget.
+ *
+ * Primary calls run on a bounded pool. A call that times out can't be stopped, since a blocked
+ * request ignores interrupts, so when the backend is slow the pool fills up with stuck calls. Once
+ * it and its queue are full, new requests go straight to the fallback instead of adding threads.
+ */
+public final class FallbackSentimentScorer implements SentimentScorer {
+  // The most primary calls to have in flight at once, and to queue behind them.
+  private static final int MAX_PRIMARY_CALLS = 16;
+  private static final int MAX_QUEUED_PRIMARY_CALLS = 16;
+
+  private static final ThreadPoolExecutor primaryCalls = new ThreadPoolExecutor(MAX_PRIMARY_CALLS,
+      MAX_PRIMARY_CALLS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_PRIMARY_CALLS),
+      runnable -> {
+        Thread thread = new Thread(runnable, "sentiment-primary");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  static {
+    primaryCalls.allowCoreThreadTimeOut(true);
+  }
+
+  private final SentimentScorer primary;
+  private final SentimentScorer fallback;
+  private final long latencyBudgetMillis;
+
+  /**
+   * @param primary The scorer to try first. Must be non-null.
+   * @param fallback The scorer used when {@code primary} fails or is too slow. Must be non-null.
+   * @param latencyBudgetMillis How long to wait for {@code primary} before falling back.
+   */
+  public FallbackSentimentScorer(
+      SentimentScorer primary, SentimentScorer fallback, long latencyBudgetMillis) {
+    if (primary == null) {
+      throw new IllegalArgumentException("primary cannot be null");
+    }
+
+    if (fallback == null) {
+      throw new IllegalArgumentException("fallback cannot be null");
+    }
+
+    this.primary = primary;
+    this.fallback = fallback;
+    this.latencyBudgetMillis = latencyBudgetMillis;
+  }
+
+  @Override
+  public float score(String text) throws IOException {
+    return scoreWithSource(text).getValue();
+  }
+
+  @Override
+  public SentimentScore scoreWithSource(String text) throws IOException {
+    Future<Float> primaryScore;
+    try {
+      primaryScore = primaryCalls.submit(() -> primary.score(text));
+    } catch (RejectedExecutionException e) {
+      System.err.println("Too many slow sentiment scoring calls, falling back");
+      return new SentimentScore(fallback.score(text), true);
+    }
+
+    try {
+      float score = primaryScore.get(latencyBudgetMillis, TimeUnit.MILLISECONDS);
+      return new SentimentScore(score, false);
+    } catch (TimeoutException e) {
+      cancel(primaryScore);
+      System.err.println("Sentiment scoring took over " + latencyBudgetMillis + "ms, falling back");
+    } catch (ExecutionException e) {
+      System.err.println("Sentiment scoring failed, falling back: " + e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      cancel(primaryScore);
+    }
+    return new SentimentScore(fallback.score(text), true);
+  }
+
+  /** Cancels a primary call, freeing its place in the queue if it hasn't started yet. */
+  private static void cancel(Future<Float> primaryScore) {
+    primaryScore.cancel(true);
+    primaryCalls.purge();
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scores sentiment in-process by looking up each word in a small built-in lexicon.
+ *
+ * Each known word contributes its weight, flipped if one of the three words before it is a
+ * negation such as "not". The summed weights are then squashed into the -1.0 to 1.0 range. This is
+ * much cruder than the Cloud Natural Language API, but needs no network and takes microseconds.
+ */
+public final class LexiconSentimentScorer implements SentimentScorer {
+  // Larger values make the score approach -1.0 or 1.0 more slowly as weights add up.
+  private static final float NORMALIZATION = 15;
+  // How many words before a lexicon word a negation still applies to it.
+  private static final int NEGATION_WINDOW = 3;
+
+  private static final Set<String> NEGATIONS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("not", "no", "never", "none", "nobody", "nothing", "neither", "nor",
+          "cannot", "can't", "don't", "doesn't", "didn't", "isn't", "wasn't", "aren't", "won't",
+          "wouldn't", "shouldn't", "couldn't")));
+
+  private static final Map<String, Float> WEIGHTS = new HashMap<>();
+
+  static {
+    addWeights(3, "love", "amazing", "awesome", "excellent", "fantastic", "wonderful", "perfect",
+        "outstanding", "brilliant", "incredible", "superb");
+    addWeights(2, "great", "good", "nice", "happy", "beautiful", "impressive", "enjoy", "enjoyed",
+        "cool", "fun", "glad", "like", "liked", "best", "helpful", "interesting", "thanks",
+        "thank", "congrats", "congratulations", "proud", "inspiring", "talented");
+    addWeights(1, "ok", "okay", "fine", "decent", "well", "better", "clean", "neat");
+    addWeights(-1, "meh", "boring", "odd", "confusing", "slow", "weird", "lame");
+    addWeights(-2, "bad", "sad", "poor", "dislike", "disliked", "wrong", "ugly", "annoying",
+        "disappointing", "disappointed", "broken", "worse", "boo", "sorry", "mediocre");
+    addWeights(-3, "hate", "terrible", "awful", "horrible", "worst", "disgusting", "useless",
+        "garbage", "trash", "pathetic", "atrocious");
+  }
+
+  private static void addWeights(float weight, String... words) {
+    for (String word : words) {
+      WEIGHTS.put(word, weight);
+    }
+  }
+
+  @Override
+  public float score(String text) {
+    String[] words = text.toLowerCase(Locale.ROOT).split("[^a-z']+");
+
+    float total = 0;
+    int lastNegation = -NEGATION_WINDOW - 1;
+    for (int i = 0; i < words.length; i++) {
+      String word = words[i];
+      if (NEGATIONS.contains(word)) {
+        lastNegation = i;
+        continue;
+      }
+
+      Float weight = WEIGHTS.get(word);
+      if (weight != null) {
+        total += i - lastNegation <= NEGATION_WINDOW ? -weight : weight;
+      }
+    }
+
+    // Same normalization as VADER: approaches +/-1.0 as the absolute total grows.
+    return (float) (total / Math.sqrt(total * total + NORMALIZATION));
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+/** A sentiment score along with whether a fallback scorer produced it. */
+public final class SentimentScore {
+  private final float value;
+  private final boolean fallback;
+
+  /**
+   * @param value A value between -1.0 and 1.0.
+   * @param fallback True if the score came from a stand-in for the usual scorer.
+   */
+  public SentimentScore(float value, boolean fallback) {
+    this.value = value;
+    this.fallback = fallback;
+  }
+
+  /** Returns a value between -1.0 and 1.0, where -1.0 is the most negative. */
+  public float getValue() {
+    return value;
+  }
+
+  /**
+   * Returns true if the score came from a stand-in because the usual scorer failed or was too
+   * slow. Such scores are fine to show, but shouldn't be stored next to scores from the usual one.
+   */
+  public boolean isFallback() {
+    return fallback;
+  }
+}
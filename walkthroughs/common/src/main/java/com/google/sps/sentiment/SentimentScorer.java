@@ -0,0 +1,41 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.io.IOException;
+
+/**
+ * Determines how negative or positive a piece of text is.
+ */
+public interface SentimentScorer {
+  /**
+   * Scores the sentiment of {@code text}.
+   *
+   * @param text The text to analyze the sentiment of.
+   * @return A value between -1.0 and 1.0, where -1.0 is the most negative and 1.0 the most positive.
+   * @throws IOException On failure to reach the scoring backend.
+   */
+  float score(String text) throws IOException;
+
+  /**
+   * Scores the sentiment of {@code text} like {@code score}, also telling whether a fallback scorer
+   * produced the score.
+   *
+   * @throws IOException On failure to reach the scoring backend.
+   */
+  default SentimentScore scoreWithSource(String text) throws IOException {
+    return new SentimentScore(score(text), false);
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+/**
+ * Creates the {@code SentimentScorer} chosen in appengine-web.xml.
+ *
+ * The "sps.sentimentScorer" system property selects "cloud" (the default) or "local". The cloud
+ * scorer falls back to the local one when it takes longer than "sps.sentimentLatencyBudgetMillis".
+ */
+public final class SentimentScorers {
+  private static final String LOCAL = "local";
+  private static final long DEFAULT_LATENCY_BUDGET_MILLIS = 500;
+
+  private SentimentScorers() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns a new scorer as configured by the system properties.
+   */
+  public static SentimentScorer fromConfiguration() {
+    SentimentScorer local = new LexiconSentimentScorer();
+    if (LOCAL.equals(System.getProperty("sps.sentimentScorer"))) {
+      return local;
+    }
+
+    long latencyBudgetMillis =
+        Long.getLong("sps.sentimentLatencyBudgetMillis", DEFAULT_LATENCY_BUDGET_MILLIS);
+    return new FallbackSentimentScorer(new CloudSentimentScorer(), local, latencyBudgetMillis);
+  }
+}
@@ -0,0 +1,230 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.counters;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.apphosting.api.ApiProxy;
+import java.lang.reflect.Proxy;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code StoredBatches} adds each batch once, including when a commit reports an error
+ * after storing it.
+ */
+@RunWith(JUnit4.class)
+public final class StoredBatchesTest {
+  private static final String PROPERTY = "count";
+  private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+  /** What the fake's next commits do. */
+  private enum CommitOutcome {
+    STORE,
+    STORE_THEN_CONFLICT,
+    STORE_THEN_FAIL,
+    CONFLICT,
+  }
+
+  /** An in-memory Datastore whose commits can be made to report errors. */
+  private static final class FakeDatastore {
+    private final Map<Key, Entity> entities = new HashMap<>();
+    private CommitOutcome outcome = CommitOutcome.STORE;
+    // How many more commits have the outcome before going back to STORE.
+    private int outcomeCount;
+    private int commits;
+    // The entity put in the open transaction, stored when it commits.
+    private Entity pendingPut;
+
+    private void failNext(CommitOutcome outcome, int count) {
+      this.outcome = outcome;
+      this.outcomeCount = count;
+    }
+
+    private long getCount(Key key) {
+      return (Long) entities.get(key).getProperty(PROPERTY);
+    }
+
+    private DatastoreService asService() {
+      return (DatastoreService) Proxy.newProxyInstance(DatastoreService.class.getClassLoader(),
+          new Class<?>[] {DatastoreService.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "beginTransaction":
+                return newTransaction();
+              case "get": {
+                Entity entity = entities.get((Key) args[1]);
+                if (entity == null) {
+                  throw new EntityNotFoundException((Key) args[1]);
+                }
+                return entity.clone();
+              }
+              case "put":
+                pendingPut = ((Entity) args[1]).clone();
+                return pendingPut.getKey();
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    private Transaction newTransaction() {
+      boolean[] active = {true};
+      pendingPut = null;
+      return (Transaction) Proxy.newProxyInstance(Transaction.class.getClassLoader(),
+          new Class<?>[] {Transaction.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "isActive":
+                return active[0];
+              case "rollback":
+                active[0] = false;
+                return null;
+              case "commit":
+                active[0] = false;
+                commit();
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    private void commit() {
+      commits++;
+      CommitOutcome current = outcomeCount > 0 ? outcome : CommitOutcome.STORE;
+      outcomeCount--;
+      if (current != CommitOutcome.CONFLICT && pendingPut != null) {
+        entities.put(pendingPut.getKey(), pendingPut);
+      }
+      switch (current) {
+        case STORE_THEN_CONFLICT:
+        case CONFLICT:
+          throw new ConcurrentModificationException();
+        case STORE_THEN_FAIL:
+          throw new DatastoreFailureException("Timed out");
+        default:
+          break;
+      }
+    }
+  }
+
+  private final FakeDatastore datastore = new FakeDatastore();
+  private Key key;
+
+  @Before
+  public void setUp() {
+    // Keys take the app id from the environment.
+    ApiProxy.setEnvironmentForCurrentThread((ApiProxy.Environment) Proxy.newProxyInstance(
+        ApiProxy.Environment.class.getClassLoader(), new Class<?>[] {ApiProxy.Environment.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getAppId":
+              return "test";
+            case "getAttributes":
+              return new HashMap<String, Object>();
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        }));
+    key = KeyFactory.createKey("Counter", "test");
+  }
+
+  @After
+  public void clearEnvironment() {
+    ApiProxy.clearEnvironmentForCurrentThread();
+  }
+
+  @Test
+  public void createsMissingEntity() {
+    Assert.assertTrue(StoredBatches.add(datastore.asService(), key, PROPERTY, 5, 1));
+
+    Assert.assertEquals(5, datastore.getCount(key));
+  }
+
+  @Test
+  public void addsUpBatches() {
+    DatastoreService service = datastore.asService();
+    Assert.assertTrue(StoredBatches.add(service, key, PROPERTY, 5, 1));
+    Assert.assertTrue(StoredBatches.add(service, key, PROPERTY, 3, 2));
+
+    Assert.assertEquals(8, datastore.getCount(key));
+  }
+
+  @Test
+  public void conflictAfterStoringAddsOnce() {
+    datastore.failNext(CommitOutcome.STORE_THEN_CONFLICT, 1);
+
+    Assert.assertTrue(StoredBatches.add(datastore.asService(), key, PROPERTY, 5, 1));
+
+    Assert.assertEquals(5, datastore.getCount(key));
+  }
+
+  @Test
+  public void retryAfterStoredFailureAddsOnce() {
+    DatastoreService service = datastore.asService();
+    datastore.failNext(CommitOutcome.STORE_THEN_FAIL, 1);
+
+    Assert.assertFalse(StoredBatches.add(service, key, PROPERTY, 5, 1));
+    Assert.assertTrue(StoredBatches.add(service, key, PROPERTY, 5, 1));
+
+    Assert.assertEquals(5, datastore.getCount(key));
+  }
+
+  @Test
+  public void givesUpAfterRepeatedConflicts() {
+    datastore.failNext(CommitOutcome.CONFLICT, Integer.MAX_VALUE);
+
+    Assert.assertFalse(StoredBatches.add(datastore.asService(), key, PROPERTY, 5, 1));
+
+    Assert.assertTrue(datastore.entities.isEmpty());
+    Assert.assertEquals(3, datastore.commits);
+  }
+
+  @Test
+  public void removesRecordsOfIdleInstances() {
+    long sequence = 10 * DAY_MILLIS;
+    Entity entity = new Entity(key);
+    entity.setProperty(PROPERTY, 0L);
+    entity.setProperty("storedBatch-idle", sequence - 2 * DAY_MILLIS);
+    entity.setProperty("storedBatch-recent", sequence - 1);
+    datastore.entities.put(key, entity);
+
+    Assert.assertTrue(StoredBatches.add(datastore.asService(), key, PROPERTY, 5, sequence));
+
+    Entity stored = datastore.entities.get(key);
+    Assert.assertFalse(stored.hasProperty("storedBatch-idle"));
+    Assert.assertTrue(stored.hasProperty("storedBatch-recent"));
+  }
+
+  @Test
+  public void sequenceKeepsIncreasing() {
+    long now = System.currentTimeMillis();
+    Assert.assertTrue(StoredBatches.nextSequence(0) >= now);
+
+    long future = now + DAY_MILLIS;
+    Assert.assertEquals(future + 1, StoredBatches.nextSequence(future));
+  }
+}
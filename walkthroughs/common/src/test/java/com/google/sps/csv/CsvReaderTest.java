@@ -0,0 +1,174 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code CsvReader} parses fields the way the standard library would. */
+@RunWith(JUnit4.class)
+public final class CsvReaderTest {
+  // Big enough to be split into several chunks.
+  private static final int LARGE_ROW_COUNT = 300000;
+
+  private static CsvReader reader(String csv) {
+    return new CsvReader("test.csv", ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static List<Double> parseDoubles(String csv) throws IOException {
+    return reader(csv).parse(new ArrayList<>(), (row, result) -> result.add(row.getDouble(0)));
+  }
+
+  @Test
+  public void parsesEachFieldType() throws IOException {
+    List<String> parsed = reader("Nessie,-12,9000000000,3.25\n").parse(new ArrayList<>(),
+        (row, result) -> {
+          result.add(row.getString(0));
+          result.add(Integer.toString(row.getInt(1)));
+          result.add(Long.toString(row.getLong(2)));
+          result.add(Double.toString(row.getDouble(3)));
+          result.add(Integer.toString(row.getFieldCount()));
+        });
+
+    Assert.assertEquals(Arrays.asList("Nessie", "-12", "9000000000", "3.25", "4"), parsed);
+  }
+
+  @Test
+  public void doublesMatchParseDouble() throws IOException {
+    Random random = new Random(0);
+    StringBuilder csv = new StringBuilder();
+    List<Double> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      String field = String.format("%.6f", (random.nextDouble() - 0.5) * 360);
+      csv.append(field).append('\n');
+      expected.add(Double.parseDouble(field));
+    }
+    for (String field : new String[] {"0", "-0.0", "+7", ".5", "5.", "123456789012345678",
+        "0.1234567890123456789012345", "1e3", "-2.5E-3"}) {
+      csv.append(field).append('\n');
+      expected.add(Double.parseDouble(field));
+    }
+
+    Assert.assertEquals(expected, parseDoubles(csv.toString()));
+  }
+
+  @Test
+  public void specialValuesTakeTheSlowPath() throws IOException {
+    List<Double> parsed = parseDoubles("NaN\nInfinity\n-Infinity\n+Infinity\n");
+
+    Assert.assertTrue(Double.isNaN(parsed.get(0)));
+    Assert.assertEquals(Double.POSITIVE_INFINITY, parsed.get(1), 0);
+    Assert.assertEquals(Double.NEGATIVE_INFINITY, parsed.get(2), 0);
+    Assert.assertEquals(Double.POSITIVE_INFINITY, parsed.get(3), 0);
+  }
+
+  @Test
+  public void invalidNumbersNameTheLine() {
+    for (String field : new String[] {"", "-", ".", "abc", "1.2.3", "12abc"}) {
+      try {
+        parseDoubles("1\n2\n" + field + ",x\n");
+        Assert.fail("Expected \"" + field + "\" to be rejected");
+      } catch (IOException e) {
+        Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("test.csv, line 3: "));
+      }
+    }
+  }
+
+  @Test
+  public void longsOutOfRangeAreRejected() throws IOException {
+    List<Long> parsed = reader("-9223372036854775808\n9223372036854775807\n")
+        .parse(new ArrayList<>(), (row, result) -> result.add(row.getLong(0)));
+    Assert.assertEquals(Long.MIN_VALUE, (long) parsed.get(0));
+    Assert.assertEquals(Long.MAX_VALUE, (long) parsed.get(1));
+
+    try {
+      reader("9223372036854775808\n").parse(null, (row, result) -> row.getLong(0));
+      Assert.fail("Expected an out of range error");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("out of range"));
+    }
+  }
+
+  @Test
+  public void acceptsCrLfAndSkipsBlankLines() throws IOException {
+    List<String> parsed = reader("a,b\r\n\r\n\nc,d\r\ne").parse(new ArrayList<>(),
+        (row, result) -> result.add(row.getString(row.getFieldCount() - 1)));
+
+    Assert.assertEquals(Arrays.asList("b", "d", "e"), parsed);
+  }
+
+  @Test
+  public void missingFieldIsAnError() {
+    try {
+      reader("1,2\n").parse(null, (row, result) -> row.getInt(2));
+      Assert.fail("Expected a missing field error");
+    } catch (IOException e) {
+      Assert.assertEquals("test.csv, line 1: Expected at least 3 fields but found 2",
+          e.getMessage());
+    }
+  }
+
+  @Test
+  public void chunksMatchParsingOnOneThread() throws IOException {
+    StringBuilder csv = new StringBuilder();
+    long expectedSum = 0;
+    for (int i = 0; i < LARGE_ROW_COUNT; i++) {
+      csv.append(i).append(",padding to make the rows longer\n");
+      expectedSum += i;
+    }
+
+    List<long[]> sums = reader(csv.toString())
+        .parseInChunks(4, () -> new long[2], (row, result) -> {
+          result[0] += row.getLong(0);
+          result[1]++;
+        });
+
+    Assert.assertTrue(sums.size() > 1);
+    long sum = 0;
+    long rows = 0;
+    for (long[] chunk : sums) {
+      sum += chunk[0];
+      rows += chunk[1];
+    }
+    Assert.assertEquals(expectedSum, sum);
+    Assert.assertEquals(LARGE_ROW_COUNT, rows);
+  }
+
+  @Test
+  public void chunkErrorsNameTheLineInTheWholeFile() {
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < LARGE_ROW_COUNT; i++) {
+      csv.append(i == LARGE_ROW_COUNT - 10 ? "oops" : Integer.toString(i))
+          .append(",padding to make the rows longer\n");
+    }
+
+    try {
+      reader(csv.toString()).parseInChunks(4, () -> null, (row, result) -> row.getLong(0));
+      Assert.fail("Expected an invalid number error");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(),
+          e.getMessage().startsWith("test.csv, line " + (LARGE_ROW_COUNT - 9) + ": "));
+    }
+  }
+}
@@ -0,0 +1,271 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.logstore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code LogStore} lists values in order, and that reopening it replays the log,
+ * drops a torn or corrupt tail, and compacts without ever reusing an id.
+ */
+@RunWith(JUnit4.class)
+public final class LogStoreTest {
+  // More than the smallest log that is compacted.
+  private static final int LARGE_VALUE_SIZE = 4096;
+  private static final int LARGE_VALUE_COUNT = 300;
+
+  /** Stores strings, sorted by their length. */
+  private static final LogStore.Codec<String> CODEC = new LogStore.Codec<String>() {
+    @Override
+    public void write(DataOutput out, String value) throws IOException {
+      out.writeInt(value.length());
+      out.writeChars(value);
+    }
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      char[] chars = new char[in.readInt()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = in.readChar();
+      }
+      return new String(chars);
+    }
+  };
+
+  private Path directory;
+  private Path path;
+  private LogStore<String> store;
+
+  @Before
+  public void open() throws IOException {
+    directory = Files.createTempDirectory("log-store");
+    path = directory.resolve("values.log");
+    store = reopen();
+  }
+
+  @After
+  public void close() throws IOException {
+    store.close();
+    for (Path file : Files.newDirectoryStream(directory)) {
+      Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  private LogStore<String> reopen() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+    store = LogStore.open(path, CODEC, String::length);
+    return store;
+  }
+
+  private static List<String> values(List<LogStore.Record<String>> records) {
+    List<String> values = new ArrayList<>();
+    for (LogStore.Record<String> record : records) {
+      values.add(record.getValue());
+    }
+    return values;
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  @Test
+  public void getsPutValuesUntilDeleted() throws IOException {
+    long id = store.nextId();
+    store.put(id, "first");
+    Assert.assertEquals("first", store.get(id));
+
+    store.put(id, "second");
+    Assert.assertEquals("second", store.get(id));
+    Assert.assertEquals(1, store.size());
+
+    store.delete(id);
+    Assert.assertNull(store.get(id));
+    Assert.assertEquals(0, store.size());
+  }
+
+  @Test
+  public void listsLongestFirstAPageAtATime() throws IOException {
+    for (String value : new String[] {"bb", "a", "dddd", "ccc"}) {
+      store.put(store.nextId(), value);
+    }
+
+    List<LogStore.Record<String>> first = store.list(null, 2);
+    Assert.assertEquals(Arrays.asList("dddd", "ccc"), values(first));
+    List<LogStore.Record<String>> second = store.list(first.get(1).getCursor(), 10);
+    Assert.assertEquals(Arrays.asList("bb", "a"), values(second));
+  }
+
+  @Test
+  public void replacedValueMovesInOrder() throws IOException {
+    long id = store.nextId();
+    store.put(id, "a");
+    store.put(store.nextId(), "bb");
+
+    store.put(id, "ccc");
+
+    Assert.assertEquals(Arrays.asList("ccc", "bb"), values(store.list(null, 10)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsInvalidCursor() throws IOException {
+    store.list("not a cursor", 10);
+  }
+
+  @Test
+  public void replaysLogOnOpen() throws IOException {
+    long kept = store.nextId();
+    long replaced = store.nextId();
+    long deleted = store.nextId();
+    store.put(kept, "kept");
+    store.put(replaced, "old");
+    store.put(deleted, "deleted");
+    store.put(replaced, "new");
+    store.delete(deleted);
+
+    reopen();
+
+    Assert.assertEquals("kept", store.get(kept));
+    Assert.assertEquals("new", store.get(replaced));
+    Assert.assertNull(store.get(deleted));
+    Assert.assertEquals(new HashSet<>(Arrays.asList(kept, replaced)), new HashSet<>(store.ids()));
+    Assert.assertEquals(Arrays.asList("kept", "new"), values(store.list(null, 10)));
+    Assert.assertTrue(store.nextId() > deleted);
+  }
+
+  @Test
+  public void dropsTornTail() throws IOException {
+    long first = store.nextId();
+    long second = store.nextId();
+    store.put(first, "first");
+    store.put(second, "second");
+    store.close();
+
+    // Cut the last record short, as a crash in the middle of a write would.
+    long size = Files.size(path);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 3);
+    }
+    store = null;
+    reopen();
+
+    Assert.assertEquals("first", store.get(first));
+    Assert.assertNull(store.get(second));
+
+    // New records go after the last whole one, and replay on the next open.
+    long third = store.nextId();
+    store.put(third, "third");
+    reopen();
+    Assert.assertEquals("first", store.get(first));
+    Assert.assertEquals("third", store.get(third));
+  }
+
+  @Test
+  public void dropsTailWithCorruptLength() throws IOException {
+    long id = store.nextId();
+    store.put(id, "value");
+    long size = Files.size(path);
+    store.close();
+
+    // A header claiming far more payload than the file holds.
+    ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + 1);
+    header.putInt(Integer.MAX_VALUE).putLong(id + 1).put((byte) 1).flip();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.write(header, size);
+    }
+    store = null;
+    reopen();
+
+    Assert.assertEquals("value", store.get(id));
+    Assert.assertEquals(size, Files.size(path));
+  }
+
+  @Test
+  public void compactsMostlySupersededLog() throws IOException {
+    long id = store.nextId();
+    for (int i = 0; i < LARGE_VALUE_COUNT; i++) {
+      store.put(id, repeat((char) ('a' + i % 26), LARGE_VALUE_SIZE));
+    }
+    long small = store.nextId();
+    store.put(small, "small");
+    long before = Files.size(path);
+
+    reopen();
+
+    Assert.assertTrue(Files.size(path) < before / 10);
+    Assert.assertEquals(
+        repeat((char) ('a' + (LARGE_VALUE_COUNT - 1) % 26), LARGE_VALUE_SIZE), store.get(id));
+    Assert.assertEquals("small", store.get(small));
+    Assert.assertEquals(2, store.size());
+
+    // The compacted log replays just the same.
+    reopen();
+    Assert.assertEquals("small", store.get(small));
+    Assert.assertEquals(2, store.size());
+  }
+
+  @Test
+  public void idsStayUniqueAcrossCompaction() throws IOException {
+    Set<Long> used = new HashSet<>();
+    long large = store.nextId();
+    used.add(large);
+    for (int i = 0; i < LARGE_VALUE_COUNT; i++) {
+      store.put(large, repeat('x', LARGE_VALUE_SIZE));
+    }
+    // The largest ids belong to values deleted before compaction, so only the record of the last
+    // id used keeps them from being handed out again.
+    long lastUsed = 0;
+    for (int i = 0; i < 10; i++) {
+      lastUsed = store.nextId();
+      used.add(lastUsed);
+      store.put(lastUsed, "deleted");
+      store.delete(lastUsed);
+    }
+    long before = Files.size(path);
+
+    reopen();
+    Assert.assertTrue(Files.size(path) < before);
+    long next = store.nextId();
+    Assert.assertFalse(used.contains(next));
+    Assert.assertTrue(next > lastUsed);
+
+    // Replaying the compacted log reads the record back.
+    reopen();
+    Assert.assertTrue(store.nextId() > lastUsed);
+  }
+}
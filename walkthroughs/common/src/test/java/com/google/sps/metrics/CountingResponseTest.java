@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.ServletOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code CountingResponse} counts everything written to the body and nothing else. */
+@RunWith(JUnit4.class)
+public final class CountingResponseTest {
+
+  @Test
+  public void countsOutputStreamBytes() throws IOException {
+    FakeServlets.Response fake = new FakeServlets.Response();
+    CountingResponse response = new CountingResponse(fake.asResponse());
+
+    ServletOutputStream out = response.getOutputStream();
+    out.write(1);
+    out.write(new byte[] {2, 3, 4, 5});
+    out.write(new byte[] {6, 7, 8}, 1, 2);
+
+    Assert.assertEquals(7, response.getSize());
+    Assert.assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 7, 8}, fake.getBytes());
+  }
+
+  @Test
+  public void countsWriterCharactersIncludingLineSeparators() throws IOException {
+    FakeServlets.Response fake = new FakeServlets.Response();
+    CountingResponse response = new CountingResponse(fake.asResponse());
+
+    PrintWriter writer = response.getWriter();
+    writer.print('a');
+    writer.print("bc");
+    writer.write(new char[] {'d', 'e'});
+    writer.println("fg");
+    writer.println();
+    writer.printf("%d", 42);
+    writer.flush();
+
+    String expected = "abcdefg" + System.lineSeparator() + System.lineSeparator() + "42";
+    Assert.assertEquals(expected, fake.getText());
+    Assert.assertEquals(expected.length(), response.getSize());
+  }
+
+  @Test
+  public void returnsTheSameWriterEveryTime() throws IOException {
+    CountingResponse response = new CountingResponse(new FakeServlets.Response().asResponse());
+
+    Assert.assertSame(response.getWriter(), response.getWriter());
+  }
+
+  @Test
+  public void reportsErrorsOfTheWrappedWriter() throws IOException {
+    CountingResponse response = new CountingResponse(FakeServlets.Response.broken().asResponse());
+
+    PrintWriter writer = response.getWriter();
+    writer.print("lost");
+
+    Assert.assertTrue(writer.checkError());
+  }
+}
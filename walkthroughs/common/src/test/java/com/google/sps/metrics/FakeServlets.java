@@ -0,0 +1,276 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Just enough of a servlet container's requests, responses and async contexts to run the metrics
+ * filter outside of one. Methods the tests don't need throw {@code UnsupportedOperationException}.
+ */
+final class FakeServlets {
+
+  private FakeServlets() {
+    // Disallow instances.
+  }
+
+  /** A request to {@code servletPath} that can go async. */
+  static final class Request {
+    private final String servletPath;
+    private Async async;
+
+    Request(String servletPath) {
+      this.servletPath = servletPath;
+    }
+
+    /** Returns the async context started by the request, or null if it never went async. */
+    Async getAsync() {
+      return async;
+    }
+
+    HttpServletRequest asRequest() {
+      return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+          new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getServletPath":
+                return servletPath;
+              case "startAsync":
+                if (args == null) {
+                  async = new Async((ServletRequest) proxy, null);
+                } else {
+                  async = new Async((ServletRequest) args[0], (ServletResponse) args[1]);
+                }
+                return async;
+              case "isAsyncStarted":
+                return async != null && !async.completed;
+              case "getAsyncContext":
+                return async;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+  }
+
+  /** Returns the config of a filter in a webapp whose only servlet has {@code mappings}. */
+  static FilterConfig filterConfig(String... mappings) {
+    ServletRegistration servlet = (ServletRegistration) Proxy.newProxyInstance(
+        ServletRegistration.class.getClassLoader(), new Class<?>[] {ServletRegistration.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getMappings")) {
+            return Arrays.asList(mappings);
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+    ServletContext context = (ServletContext) Proxy.newProxyInstance(
+        ServletContext.class.getClassLoader(), new Class<?>[] {ServletContext.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getServletRegistrations")) {
+            return Collections.singletonMap("servlet", servlet);
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+    return (FilterConfig) Proxy.newProxyInstance(FilterConfig.class.getClassLoader(),
+        new Class<?>[] {FilterConfig.class}, (proxy, method, args) -> {
+          if (method.getName().equals("getServletContext")) {
+            return context;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  /** A response that keeps its status and body in memory. */
+  static final class Response {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final StringWriter chars = new StringWriter();
+    private final PrintWriter writer;
+    private int status = HttpServletResponse.SC_OK;
+
+    Response() {
+      writer = new PrintWriter(chars);
+    }
+
+    /** Creates a response whose writer fails, like one to a client that has gone away. */
+    static Response broken() {
+      return new Response(new Writer() {
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+          throw new IOException("Connection reset");
+        }
+
+        @Override
+        public void flush() throws IOException {
+          throw new IOException("Connection reset");
+        }
+
+        @Override
+        public void close() {}
+      });
+    }
+
+    private Response(Writer writer) {
+      this.writer = new PrintWriter(writer);
+    }
+
+    String getText() {
+      writer.flush();
+      return chars.toString();
+    }
+
+    byte[] getBytes() {
+      return bytes.toByteArray();
+    }
+
+    HttpServletResponse asResponse() {
+      ServletOutputStream outputStream = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          bytes.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {}
+      };
+      return (HttpServletResponse) Proxy.newProxyInstance(
+          HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "getStatus":
+                return status;
+              case "setStatus":
+              case "sendError":
+                status = (Integer) args[0];
+                return null;
+              case "getWriter":
+                return writer;
+              case "getOutputStream":
+                return outputStream;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+  }
+
+  /** An async context that completes when the test calls {@code complete()}. */
+  static final class Async implements AsyncContext {
+    private final ServletRequest request;
+    private final ServletResponse response;
+    private final List<AsyncListener> listeners = new ArrayList<>();
+    private boolean completed;
+
+    private Async(ServletRequest request, ServletResponse response) {
+      this.request = request;
+      this.response = response;
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+      return request;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+      return response;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+      return false;
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest request,
+        ServletResponse response) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void complete() {
+      completed = true;
+      for (AsyncListener listener : listeners) {
+        try {
+          listener.onComplete(new AsyncEvent(this));
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }
+
+    @Override
+    public void dispatch() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void dispatch(String path) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void start(Runnable run) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setTimeout(long timeout) {}
+
+    @Override
+    public long getTimeout() {
+      return 0;
+    }
+  }
+}
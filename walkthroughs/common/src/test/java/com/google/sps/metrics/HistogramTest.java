@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code Histogram} reports percentiles within its bucket width. */
+@RunWith(JUnit4.class)
+public final class HistogramTest {
+  // Buckets are at most 1/32 wide, so reported values are at most about 3% high.
+  private static final double TOLERANCE = 1.0 / 32;
+
+  private static void assertWithinBucket(long expected, long actual) {
+    Assert.assertTrue("expected about " + expected + " but was " + actual,
+        actual >= expected && actual <= expected * (1 + TOLERANCE));
+  }
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    Histogram.Snapshot snapshot = new Histogram().getSnapshot();
+
+    Assert.assertEquals(0, snapshot.getCount());
+    Assert.assertEquals(0, snapshot.getSum());
+    Assert.assertEquals(0, snapshot.getPercentile(50));
+    Assert.assertEquals(0, snapshot.getMax());
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < 64; i++) {
+      histogram.record(i);
+    }
+
+    Histogram.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(31, snapshot.getPercentile(50));
+    Assert.assertEquals(63, snapshot.getMax());
+  }
+
+  @Test
+  public void percentilesAreWithinBucketWidth() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 1000000; i++) {
+      histogram.record(i);
+    }
+
+    Histogram.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(1000000, snapshot.getCount());
+    Assert.assertEquals(1000000L * 1000001 / 2, snapshot.getSum());
+    assertWithinBucket(500000, snapshot.getPercentile(50));
+    assertWithinBucket(990000, snapshot.getPercentile(99));
+    assertWithinBucket(999000, snapshot.getPercentile(99.9));
+    assertWithinBucket(1000000, snapshot.getMax());
+  }
+
+  @Test
+  public void negativeValuesCountAsZero() {
+    Histogram histogram = new Histogram();
+    histogram.record(-5);
+
+    Histogram.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(1, snapshot.getCount());
+    Assert.assertEquals(0, snapshot.getSum());
+    Assert.assertEquals(0, snapshot.getMax());
+  }
+
+  @Test
+  public void hugeValuesLandInLastBucket() {
+    Histogram histogram = new Histogram();
+    histogram.record(1L << 42);
+    histogram.record(Long.MAX_VALUE);
+
+    // Over a month in microseconds, or 4 TB in bytes.
+    Histogram.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(2, snapshot.getCount());
+    Assert.assertEquals((1L << 42) - 1, snapshot.getPercentile(50));
+    Assert.assertEquals((1L << 42) - 1, snapshot.getMax());
+  }
+
+  @Test
+  public void addingSnapshotsMergesCounts() {
+    Histogram low = new Histogram();
+    Histogram high = new Histogram();
+    for (int i = 0; i < 100; i++) {
+      low.record(10);
+      high.record(1000);
+    }
+
+    Histogram.Snapshot merged = new Histogram.Snapshot();
+    merged.add(low.getSnapshot());
+    merged.add(high.getSnapshot());
+
+    Assert.assertEquals(200, merged.getCount());
+    Assert.assertEquals(100 * 10 + 100 * 1000, merged.getSum());
+    Assert.assertEquals(10, merged.getPercentile(50));
+    assertWithinBucket(1000, merged.getPercentile(51));
+  }
+}
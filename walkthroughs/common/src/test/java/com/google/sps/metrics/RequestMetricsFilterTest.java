@@ -0,0 +1,131 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code RequestMetricsFilter} records the status and size of synchronous, failing and
+ * async requests, and groups unmapped and missing paths. RequestMetrics is global, so each test
+ * requests its own route.
+ */
+@RunWith(JUnit4.class)
+public final class RequestMetricsFilterTest {
+  private final RequestMetricsFilter filter = new RequestMetricsFilter();
+
+  @Test
+  public void recordsStatusAndSize() throws IOException, ServletException {
+    FakeServlets.Request request = new FakeServlets.Request("/sync");
+    FakeServlets.Response response = new FakeServlets.Response();
+
+    filter.doFilter(request.asRequest(), response.asResponse(), (req, resp) -> {
+      ((HttpServletResponse) resp).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+      resp.getWriter().print("invalid");
+    });
+
+    RequestMetrics.Route route = RequestMetrics.getRoutes().get("/sync");
+    Assert.assertEquals(1, route.getCount());
+    Assert.assertEquals(1, route.getStatusCount(4));
+    Assert.assertEquals(7, route.getSize().getSum());
+    Assert.assertEquals("invalid", response.getText());
+  }
+
+  @Test
+  public void recordsNotFoundUnderOneRoute() throws IOException, ServletException {
+    long before = getCount(RequestMetricsFilter.NOT_FOUND_ROUTE);
+
+    for (String path : new String[] {"/missing-1", "/missing-2"}) {
+      FakeServlets.Response response = new FakeServlets.Response();
+      filter.doFilter(new FakeServlets.Request(path).asRequest(), response.asResponse(),
+          (req, resp) -> ((HttpServletResponse) resp).sendError(HttpServletResponse.SC_NOT_FOUND));
+    }
+
+    Assert.assertNull(RequestMetrics.getRoutes().get("/missing-1"));
+    Assert.assertEquals(before + 2, getCount(RequestMetricsFilter.NOT_FOUND_ROUTE));
+  }
+
+  @Test
+  public void recordsUnmappedPathsUnderOneRoute() throws IOException, ServletException {
+    RequestMetricsFilter mapped = new RequestMetricsFilter();
+    mapped.init(FakeServlets.filterConfig("/mapped", "/prefix/*", "*.jsp"));
+    long before = getCount(RequestMetricsFilter.STATIC_ROUTE);
+
+    for (String path : new String[] {"/mapped", "/prefix", "/page.jsp", "/a.png", "/b.png"}) {
+      FakeServlets.Response response = new FakeServlets.Response();
+      mapped.doFilter(new FakeServlets.Request(path).asRequest(), response.asResponse(),
+          (req, resp) -> {});
+    }
+
+    Assert.assertEquals(1, getCount("/mapped"));
+    Assert.assertEquals(1, getCount("/prefix"));
+    Assert.assertEquals(1, getCount("/page.jsp"));
+    Assert.assertNull(RequestMetrics.getRoutes().get("/a.png"));
+    Assert.assertEquals(before + 2, getCount(RequestMetricsFilter.STATIC_ROUTE));
+  }
+
+  @Test
+  public void recordsFailedRequestAsServerError() throws IOException {
+    FakeServlets.Request request = new FakeServlets.Request("/failing");
+    FakeServlets.Response response = new FakeServlets.Response();
+
+    try {
+      filter.doFilter(request.asRequest(), response.asResponse(), (req, resp) -> {
+        throw new ServletException("Broken servlet");
+      });
+      Assert.fail("Expected the servlet's exception");
+    } catch (ServletException e) {
+      Assert.assertEquals("Broken servlet", e.getMessage());
+    }
+
+    // The status is still 200 when the filter returns; the container sends the 500 afterwards.
+    RequestMetrics.Route route = RequestMetrics.getRoutes().get("/failing");
+    Assert.assertEquals(1, route.getCount());
+    Assert.assertEquals(1, route.getStatusCount(5));
+    Assert.assertEquals(0, route.getStatusCount(2));
+  }
+
+  @Test
+  public void recordsAsyncRequestWhenItCompletes() throws IOException, ServletException {
+    FakeServlets.Request request = new FakeServlets.Request("/async");
+    FakeServlets.Response response = new FakeServlets.Response();
+
+    filter.doFilter(request.asRequest(), response.asResponse(), (req, resp) -> req.startAsync());
+    Assert.assertNull(RequestMetrics.getRoutes().get("/async"));
+
+    // Servlets write async responses through the context, which must still count them.
+    AsyncContext async = request.getAsync();
+    async.getResponse().getWriter().print("later");
+    ((HttpServletResponse) async.getResponse()).setStatus(HttpServletResponse.SC_CREATED);
+    async.complete();
+
+    RequestMetrics.Route route = RequestMetrics.getRoutes().get("/async");
+    Assert.assertEquals(1, route.getCount());
+    Assert.assertEquals(1, route.getStatusCount(2));
+    Assert.assertEquals(5, route.getSize().getSum());
+    Assert.assertEquals("later", response.getText());
+  }
+
+  private static long getCount(String route) {
+    RequestMetrics.Route metrics = RequestMetrics.getRoutes().get(route);
+    return metrics == null ? 0 : metrics.getCount();
+  }
+}
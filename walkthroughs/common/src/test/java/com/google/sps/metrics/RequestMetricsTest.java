@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code RequestMetrics} merges the recorder stripes of every thread, both while the
+ * threads run and after they end. RequestMetrics is global, so each test records under its own
+ * routes.
+ */
+@RunWith(JUnit4.class)
+public final class RequestMetricsTest {
+  private static final int THREAD_COUNT = 8;
+  private static final int REQUESTS_PER_THREAD = 10000;
+
+  @Test
+  public void mergesConcurrentThreadsWhileRunningAndAfterEnding() throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch recorded = new CountDownLatch(THREAD_COUNT);
+    CountDownLatch finish = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREAD_COUNT; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+            RequestMetrics.record("/concurrent", i, i % 2 == 0 ? 200 : 503, 10);
+          }
+          recorded.countDown();
+          finish.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    // Every thread records at once, then waits so that its stripe is read while it is alive.
+    start.countDown();
+    recorded.await();
+    assertMerged(RequestMetrics.getRoutes().get("/concurrent"));
+
+    finish.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertMerged(RequestMetrics.getRoutes().get("/concurrent"));
+  }
+
+  private static void assertMerged(RequestMetrics.Route route) {
+    long total = (long) THREAD_COUNT * REQUESTS_PER_THREAD;
+    Assert.assertEquals(total, route.getCount());
+    Assert.assertEquals(total / 2, route.getStatusCount(2));
+    Assert.assertEquals(total / 2, route.getStatusCount(5));
+    Assert.assertEquals(10 * total, route.getSize().getSum());
+    Assert.assertEquals(THREAD_COUNT * (long) REQUESTS_PER_THREAD * (REQUESTS_PER_THREAD - 1) / 2,
+        route.getLatency().getSum());
+  }
+
+  @Test
+  public void countsUnusualStatusCodesSeparately() {
+    RequestMetrics.record("/unusual", 1, 200, 0);
+    RequestMetrics.record("/unusual", 1, 99, 0);
+    RequestMetrics.record("/unusual", 1, 600, 0);
+
+    RequestMetrics.Route route = RequestMetrics.getRoutes().get("/unusual");
+    Assert.assertEquals(3, route.getCount());
+    Assert.assertEquals(1, route.getStatusCount(2));
+    Assert.assertEquals(2, route.getStatusCount(0));
+  }
+
+  @Test
+  public void unrecordedRouteIsAbsent() {
+    Assert.assertNull(RequestMetrics.getRoutes().get("/never-requested"));
+  }
+}
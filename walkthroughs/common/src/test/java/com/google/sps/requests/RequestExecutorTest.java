@@ -0,0 +1,235 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.requests;
+
+import com.google.apphosting.api.ApiProxy;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code RequestExecutor} runs handlers inline or on its workers, hands each worker the
+ * App Engine environment of the request that submitted the handler, and turns requests away with
+ * a 503 once its queue is full.
+ */
+@RunWith(JUnit4.class)
+public final class RequestExecutorTest {
+  private static final long WAIT_SECONDS = 10;
+
+  /** A request and its response, which records the error sent and when it completes. */
+  private static final class Exchange {
+    private final boolean asyncSupported;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile int error;
+    private boolean asyncStarted;
+
+    private Exchange(boolean asyncSupported) {
+      this.asyncSupported = asyncSupported;
+    }
+
+    private HttpServletResponse asResponse() {
+      return (HttpServletResponse) Proxy.newProxyInstance(
+          HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "isCommitted":
+                return false;
+              case "sendError":
+                error = (Integer) args[0];
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    private HttpServletRequest asRequest(HttpServletResponse response) {
+      return (HttpServletRequest) Proxy.newProxyInstance(
+          HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "isAsyncSupported":
+                return asyncSupported;
+              case "startAsync":
+                asyncStarted = true;
+                return asAsyncContext((HttpServletRequest) proxy, response);
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    private AsyncContext asAsyncContext(HttpServletRequest request,
+        HttpServletResponse response) {
+      return (AsyncContext) Proxy.newProxyInstance(AsyncContext.class.getClassLoader(),
+          new Class<?>[] {AsyncContext.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "setTimeout":
+                return null;
+              case "getRequest":
+                return request;
+              case "getResponse":
+                return response;
+              case "complete":
+                completed.countDown();
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    /** Runs {@code handler} for this exchange through {@code executor}. */
+    private void run(RequestExecutor executor, RequestExecutor.Handler handler)
+        throws IOException {
+      HttpServletResponse response = asResponse();
+      executor.run(asRequest(response), response, handler);
+    }
+
+    private void awaitCompletion() throws InterruptedException {
+      Assert.assertTrue(completed.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+  }
+
+  private static ApiProxy.Environment fakeEnvironment() {
+    return (ApiProxy.Environment) Proxy.newProxyInstance(
+        ApiProxy.Environment.class.getClassLoader(), new Class<?>[] {ApiProxy.Environment.class},
+        (proxy, method, args) -> {
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  @After
+  public void clearEnvironment() {
+    ApiProxy.clearEnvironmentForCurrentThread();
+  }
+
+  @Test
+  public void inlineModeRunsOnRequestThread() throws IOException {
+    Exchange exchange = new Exchange(true);
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+    exchange.run(new RequestExecutor(false, 1, 1), (request, response) ->
+        ranOn.set(Thread.currentThread()));
+
+    Assert.assertSame(Thread.currentThread(), ranOn.get());
+    Assert.assertFalse(exchange.asyncStarted);
+  }
+
+  @Test
+  public void servletWithoutAsyncSupportRunsInline() throws IOException {
+    Exchange exchange = new Exchange(false);
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+    exchange.run(new RequestExecutor(true, 1, 1), (request, response) ->
+        ranOn.set(Thread.currentThread()));
+
+    Assert.assertSame(Thread.currentThread(), ranOn.get());
+  }
+
+  @Test
+  public void asyncModeRunsOnWorkerWithRequestEnvironment()
+      throws IOException, InterruptedException {
+    ApiProxy.Environment environment = fakeEnvironment();
+    ApiProxy.setEnvironmentForCurrentThread(environment);
+    Exchange exchange = new Exchange(true);
+    AtomicReference<Thread> ranOn = new AtomicReference<>();
+    AtomicReference<ApiProxy.Environment> ranWith = new AtomicReference<>();
+
+    exchange.run(new RequestExecutor(true, 1, 1), (request, response) -> {
+      ranOn.set(Thread.currentThread());
+      ranWith.set(ApiProxy.getCurrentEnvironment());
+    });
+    exchange.awaitCompletion();
+
+    Assert.assertTrue(exchange.asyncStarted);
+    Assert.assertNotSame(Thread.currentThread(), ranOn.get());
+    Assert.assertSame(environment, ranWith.get());
+  }
+
+  @Test
+  public void workerClearsEnvironmentAfterHandler() throws IOException, InterruptedException {
+    RequestExecutor executor = new RequestExecutor(true, 1, 1);
+    ApiProxy.setEnvironmentForCurrentThread(fakeEnvironment());
+    Exchange first = new Exchange(true);
+    first.run(executor, (request, response) -> {});
+    first.awaitCompletion();
+
+    // The next request on the same worker comes from a thread without an environment.
+    ApiProxy.clearEnvironmentForCurrentThread();
+    Exchange second = new Exchange(true);
+    AtomicReference<ApiProxy.Environment> ranWith = new AtomicReference<>(fakeEnvironment());
+    second.run(executor, (request, response) -> ranWith.set(ApiProxy.getCurrentEnvironment()));
+    second.awaitCompletion();
+
+    Assert.assertNull(ranWith.get());
+  }
+
+  @Test
+  public void failedHandlerSendsServerError() throws IOException, InterruptedException {
+    Exchange exchange = new Exchange(true);
+
+    exchange.run(new RequestExecutor(true, 1, 1), (request, response) -> {
+      throw new IOException("Backend unavailable");
+    });
+    exchange.awaitCompletion();
+
+    Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exchange.error);
+  }
+
+  @Test
+  public void fullQueueSendsServiceUnavailable() throws IOException, InterruptedException {
+    RequestExecutor executor = new RequestExecutor(true, 1, 1);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RequestExecutor.Handler blocking = (request, response) -> {
+      running.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    // One request runs on the only worker and another waits in the queue, which is then full.
+    Exchange runningExchange = new Exchange(true);
+    runningExchange.run(executor, blocking);
+    Assert.assertTrue(running.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    Exchange queued = new Exchange(true);
+    queued.run(executor, (request, response) -> {});
+
+    Exchange rejected = new Exchange(true);
+    rejected.run(executor, (request, response) -> Assert.fail("Rejected handler ran"));
+
+    // Turned away on the request thread, without waiting for a worker.
+    Assert.assertEquals(0, rejected.completed.getCount());
+    Assert.assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.error);
+
+    release.countDown();
+    runningExchange.awaitCompletion();
+    queued.awaitCompletion();
+    Assert.assertEquals(0, queued.error);
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code FallbackSentimentScorer} uses the primary scorer's answer when it comes within
+ * the latency budget, and the fallback's otherwise.
+ */
+@RunWith(JUnit4.class)
+public final class FallbackSentimentScorerTest {
+  private static final float DELTA = 1e-6f;
+  private static final float PRIMARY_SCORE = 0.5f;
+  private static final float FALLBACK_SCORE = -0.5f;
+  private static final long BUDGET_MILLIS = 200;
+  // Generous, so that a slow test machine doesn't fail the test.
+  private static final long MAX_OVERRUN_MILLIS = 2000;
+
+  private static final SentimentScorer FALLBACK = text -> FALLBACK_SCORE;
+
+  @Test
+  public void rejectsMissingScorers() {
+    try {
+      new FallbackSentimentScorer(null, FALLBACK, BUDGET_MILLIS);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+    try {
+      new FallbackSentimentScorer(FALLBACK, null, BUDGET_MILLIS);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void usesPrimaryWithinBudget() throws IOException {
+    FallbackSentimentScorer scorer =
+        new FallbackSentimentScorer(text -> PRIMARY_SCORE, FALLBACK, BUDGET_MILLIS);
+
+    SentimentScore score = scorer.scoreWithSource("text");
+
+    Assert.assertEquals(PRIMARY_SCORE, score.getValue(), DELTA);
+    Assert.assertFalse(score.isFallback());
+    Assert.assertEquals(PRIMARY_SCORE, scorer.score("text"), DELTA);
+  }
+
+  @Test
+  public void fallsBackWhenPrimaryFails() throws IOException {
+    FallbackSentimentScorer scorer = new FallbackSentimentScorer(text -> {
+      throw new IOException("Backend unavailable");
+    }, FALLBACK, BUDGET_MILLIS);
+
+    SentimentScore score = scorer.scoreWithSource("text");
+
+    Assert.assertEquals(FALLBACK_SCORE, score.getValue(), DELTA);
+    Assert.assertTrue(score.isFallback());
+  }
+
+  @Test
+  public void fallsBackOnceBudgetIsSpent() throws IOException {
+    CountDownLatch release = new CountDownLatch(1);
+    // Like a blocked network call, ignores the interrupt sent when it is cancelled.
+    SentimentScorer stuck = text -> {
+      while (release.getCount() > 0) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Keep waiting.
+        }
+      }
+      return PRIMARY_SCORE;
+    };
+    FallbackSentimentScorer scorer = new FallbackSentimentScorer(stuck, FALLBACK, BUDGET_MILLIS);
+
+    try {
+      long start = System.nanoTime();
+      SentimentScore score = scorer.scoreWithSource("text");
+      long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+      Assert.assertEquals(FALLBACK_SCORE, score.getValue(), DELTA);
+      Assert.assertTrue(score.isFallback());
+      Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= BUDGET_MILLIS);
+      Assert.assertTrue("took " + elapsedMillis + "ms",
+          elapsedMillis < BUDGET_MILLIS + MAX_OVERRUN_MILLIS);
+    } finally {
+      // Free the shared pool's thread for the other tests.
+      release.countDown();
+    }
+  }
+}
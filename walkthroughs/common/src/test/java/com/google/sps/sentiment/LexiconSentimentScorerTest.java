@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.sentiment;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code LexiconSentimentScorer} weighs, negates and normalizes words as documented. */
+@RunWith(JUnit4.class)
+public final class LexiconSentimentScorerTest {
+  private static final float DELTA = 1e-6f;
+
+  private final LexiconSentimentScorer scorer = new LexiconSentimentScorer();
+
+  @Test
+  public void textWithoutKnownWordsIsNeutral() {
+    Assert.assertEquals(0, scorer.score(""), DELTA);
+    Assert.assertEquals(0, scorer.score("The meeting is on Tuesday."), DELTA);
+  }
+
+  @Test
+  public void singleWordIsNormalized() {
+    // A weight of 3, squashed as 3 / sqrt(3 * 3 + 15).
+    Assert.assertEquals(3 / Math.sqrt(24), scorer.score("I love it"), DELTA);
+    Assert.assertEquals(-3 / Math.sqrt(24), scorer.score("I hate it"), DELTA);
+  }
+
+  @Test
+  public void ignoresCaseAndPunctuation() {
+    Assert.assertEquals(scorer.score("great"), scorer.score("GREAT!!!"), DELTA);
+    Assert.assertEquals(scorer.score("good, nice"), scorer.score("Good...nice?"), DELTA);
+  }
+
+  @Test
+  public void negationFlipsNextFewWords() {
+    Assert.assertEquals(-scorer.score("good"), scorer.score("not good"), DELTA);
+    Assert.assertEquals(-scorer.score("good"), scorer.score("don't think it's good"), DELTA);
+    // Four words after the negation it no longer applies.
+    Assert.assertEquals(scorer.score("good"), scorer.score("not that it was ever good"), DELTA);
+  }
+
+  @Test
+  public void weightsAddUp() {
+    Assert.assertTrue(scorer.score("good and nice") > scorer.score("good"));
+    Assert.assertEquals(0, scorer.score("good but bad"), DELTA);
+  }
+
+  @Test
+  public void staysWithinRange() {
+    StringBuilder positive = new StringBuilder();
+    StringBuilder negative = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      positive.append("amazing ");
+      negative.append("awful ");
+    }
+
+    float high = scorer.score(positive.toString());
+    float low = scorer.score(negative.toString());
+    Assert.assertTrue(high > 0.99f && high <= 1);
+    Assert.assertTrue(low < -0.99f && low >= -1);
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Estimates the number of distinct values added to it, using a HyperLogLog sketch.
+ *
+ * Each value is hashed to 64 bits. The first {@code PRECISION} bits pick one of 16384 registers,
+ * which keeps the longest run of leading zeros seen in the rest of the hash. The estimate is
+ * typically within 1% of the true count however many values are added, and the sketch takes 12 KB
+ * when stored. Two sketches merge by taking the larger of each pair of registers, so sketches built
+ * on different instances combine into the sketch of all their values, and merging the same values
+ * twice changes nothing.
+ *
+ * Adding values is safe from several threads at once. Once registers fill up, most adds change
+ * nothing and take no lock. The sketch's version changes whenever an add or merge changes it, so
+ * callers can tell whether it needs storing again.
+ */
+public final class HyperLogLog {
+  private static final int PRECISION = 14;
+  private static final int REGISTER_COUNT = 1 << PRECISION;
+  // Registers are packed into 6 bits each when stored.
+  private static final int REGISTER_BITS = 6;
+  /** The size of the array returned by {@code toBytes}. */
+  public static final int SERIALIZED_SIZE = REGISTER_COUNT * REGISTER_BITS / 8;
+
+  private final byte[] registers = new byte[REGISTER_COUNT];
+  // Incremented while holding this.
+  private volatile long version;
+
+  /** Adds a value, such as a visitor's id. */
+  public void add(String value) {
+    long hash = hash(value.getBytes(StandardCharsets.UTF_8));
+    int index = (int) (hash >>> (64 - PRECISION));
+    // The lowest bit set stops the count at the register's 6-bit limit.
+    int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    update(index, rank);
+  }
+
+  /** Adds every value added to {@code other}. */
+  public void merge(HyperLogLog other) {
+    for (int i = 0; i < REGISTER_COUNT; i++) {
+      update(i, other.registers[i]);
+    }
+  }
+
+  /** Returns the estimated number of distinct values added. */
+  public long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < REGISTER_COUNT; i++) {
+      int register = registers[i];
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+
+    double alpha = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+    double estimate = alpha * REGISTER_COUNT * REGISTER_COUNT / sum;
+    if (estimate <= 2.5 * REGISTER_COUNT && zeros > 0) {
+      // Small counts are estimated more accurately from the registers still empty.
+      estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Returns a number that changes whenever the sketch does. A sketch whose version is the same as
+   * when it was last stored needs no storing.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /** Returns the registers packed into {@code SERIALIZED_SIZE} bytes. */
+  public byte[] toBytes() {
+    byte[] bytes = new byte[SERIALIZED_SIZE];
+    // Every 4 registers fill 3 bytes.
+    for (int i = 0, j = 0; i < REGISTER_COUNT; i += 4, j += 3) {
+      int packed = registers[i] << 18 | registers[i + 1] << 12 | registers[i + 2] << 6
+          | registers[i + 3];
+      bytes[j] = (byte) (packed >>> 16);
+      bytes[j + 1] = (byte) (packed >>> 8);
+      bytes[j + 2] = (byte) packed;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the sketch stored by {@code toBytes}.
+   *
+   * @throws IllegalArgumentException If {@code bytes} is not a stored sketch.
+   */
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    if (bytes.length != SERIALIZED_SIZE) {
+      throw new IllegalArgumentException("Expected " + SERIALIZED_SIZE + " bytes but found "
+          + bytes.length);
+    }
+
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = 0, j = 0; i < REGISTER_COUNT; i += 4, j += 3) {
+      int packed = (bytes[j] & 0xff) << 16 | (bytes[j + 1] & 0xff) << 8 | (bytes[j + 2] & 0xff);
+      sketch.registers[i] = (byte) (packed >>> 18 & 0x3f);
+      sketch.registers[i + 1] = (byte) (packed >>> 12 & 0x3f);
+      sketch.registers[i + 2] = (byte) (packed >>> 6 & 0x3f);
+      sketch.registers[i + 3] = (byte) (packed & 0x3f);
+    }
+    return sketch;
+  }
+
+  private void update(int index, int rank) {
+    // A stale read only sends the update through the lock, which checks again.
+    if (rank > registers[index]) {
+      synchronized (this) {
+        if (rank > registers[index]) {
+          registers[index] = (byte) rank;
+          version++;
+        }
+      }
+    }
+  }
+
+  /** FNV-1a, with the MurmurHash3 finalizer to spread the bits. */
+  private static long hash(byte[] bytes) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb93fe53ba63L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
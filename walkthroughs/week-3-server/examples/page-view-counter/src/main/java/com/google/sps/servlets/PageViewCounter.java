@@ -0,0 +1,164 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.counters.Flusher;
+import com.google.sps.counters.StoredBatches;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts page views without locking, and periodically adds them to a sharded counter in Datastore.
+ *
+ * Views are counted in a {@code LongAdder}, so concurrent requests never contend on one counter.
+ * On every run of the {@code Flusher}, the views counted since the last flush are added to one of
+ * {@code SHARD_COUNT} "PageViewShard" entities, picked at random, in a transaction. Spreading the
+ * writes over shards keeps instances from contending on a single entity. Every shard is then read
+ * back to get the stored total.
+ *
+ * A batch of views that fails to store is retried on the same shard until it is, and
+ * {@code StoredBatches} makes sure it is only added once.
+ */
+final class PageViewCounter {
+  private static final int SHARD_COUNT = 20;
+
+  /** The stored total along with the views being added to it, read together. */
+  private static final class Snapshot {
+    private final long total;
+    private final long flushing;
+
+    private Snapshot(long total, long flushing) {
+      this.total = total;
+      this.flushing = flushing;
+    }
+  }
+
+  /** Views taken from {@code pending} to be added to one shard. */
+  private static final class Batch {
+    private final long views;
+    // Larger than that of every earlier batch of this instance.
+    private final long sequence;
+    private final int shard;
+
+    private Batch(long views, long sequence, int shard) {
+      this.views = views;
+      this.sequence = sequence;
+      this.shard = shard;
+    }
+  }
+
+  // The views counted since the last flush.
+  private static final LongAdder pending = new LongAdder();
+
+  // Only used by flush, which the Flusher never runs twice at once. The batch not yet known to be
+  // stored, or null if there is none.
+  private static Batch unstored;
+  // The sequence number of the last batch.
+  private static long lastSequence;
+
+  // Null until the total is first loaded.
+  private static volatile Snapshot snapshot;
+
+  static {
+    Flusher.register(PageViewCounter::flush);
+  }
+
+  private PageViewCounter() {
+    // Disallow instances.
+  }
+
+  /** Counts a page view. */
+  static void increment() {
+    pending.increment();
+  }
+
+  /**
+   * Returns the number of page views: the stored total as of the last flush plus the views counted
+   * here since.
+   */
+  static long getCount() {
+    Snapshot current = loadSnapshot();
+    return current.total + current.flushing + pending.sum();
+  }
+
+  private static Snapshot loadSnapshot() {
+    Snapshot current = snapshot;
+    if (current != null) {
+      return current;
+    }
+
+    synchronized (PageViewCounter.class) {
+      if (snapshot == null) {
+        snapshot = new Snapshot(loadTotal(), 0);
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Adds the views counted since the last flush to a shard and reloads the total. A batch that
+   * failed to store in an earlier flush is retried first, and new views wait until it is stored.
+   */
+  private static void flush() {
+    try {
+      long total = loadSnapshot().total;
+      if (unstored == null) {
+        // Unlike sumThenReset, this never loses a view counted between the sum and the reset.
+        long views = pending.sum();
+        pending.add(-views);
+        if (views != 0) {
+          lastSequence = StoredBatches.nextSequence(lastSequence);
+          unstored =
+              new Batch(views, lastSequence, ThreadLocalRandom.current().nextInt(SHARD_COUNT));
+        }
+      }
+      snapshot = new Snapshot(total, unstored == null ? 0 : unstored.views);
+
+      if (unstored != null && StoredBatches.add(DatastoreServiceFactory.getDatastoreService(),
+          getShardKey(unstored.shard), "views", unstored.views, unstored.sequence)) {
+        unstored = null;
+      }
+
+      snapshot = new Snapshot(loadTotal(), unstored == null ? 0 : unstored.views);
+    } catch (RuntimeException e) {
+      System.err.println("Could not flush page views: " + e);
+    }
+  }
+
+  /** Returns the sum of every shard, read with one batch get. */
+  private static long loadTotal() {
+    List<Key> keys = new ArrayList<>();
+    for (int i = 0; i < SHARD_COUNT; i++) {
+      keys.add(getShardKey(i));
+    }
+
+    long total = 0;
+    for (Entity shard : DatastoreServiceFactory.getDatastoreService().get(keys).values()) {
+      total += (Long) shard.getProperty("views");
+    }
+    return total;
+  }
+
+  private static Key getShardKey(int index) {
+    // Ids start at 1.
+    return KeyFactory.createKey("PageViewShard", index + 1);
+  }
+}
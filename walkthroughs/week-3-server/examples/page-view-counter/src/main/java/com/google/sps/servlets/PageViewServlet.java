@@ -20,18 +20,24 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that returns HTML that contains the page view count. */
+/**
+ * Servlet that returns HTML that contains the page view count and roughly how many different
+ * visitors, told apart by IP address, have viewed the page today.
+ */
 @WebServlet("/page-views")
 public class PageViewServlet extends HttpServlet {
 
-  private int pageViews = 0;
-
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    pageViews++;
+    PageViewCounter.increment();
+    UniqueVisitorCounter.add(request.getRemoteAddr());
+    long pageViews = PageViewCounter.getCount();
+    long visitors = UniqueVisitorCounter.getTodaysVisitors();
 
     response.setContentType("text/html;");
     response.getWriter().println("<h1>Page Views</h1>");
     response.getWriter().println("<p>This page has been viewed " + pageViews + " times.</p>");
+    response.getWriter().println(
+        "<p>About " + visitors + " different visitors have viewed it today (UTC).</p>");
   }
 }
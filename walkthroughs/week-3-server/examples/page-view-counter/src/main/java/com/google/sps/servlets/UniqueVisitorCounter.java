@@ -0,0 +1,209 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.sps.counters.Flusher;
+import com.google.sps.data.HyperLogLog;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the number of distinct visitors each day with a {@code HyperLogLog} sketch per day.
+ *
+ * Visitors are added to a sketch kept on this instance. On every run of the {@code Flusher}, each
+ * local sketch is merged into the "VisitorSketch" entity for its day in a transaction, so the
+ * sketches of every instance combine. Since merging is idempotent, local sketches are never reset,
+ * only dropped once their day is over. A local sketch that hasn't changed since it was last stored
+ * is not stored again. Estimates combine the stored sketch as of the last flush with the local
+ * one, and are cached for {@code ESTIMATE_CACHE_MILLIS}.
+ */
+final class UniqueVisitorCounter {
+  private static final int MAX_COMMIT_ATTEMPTS = 3;
+  private static final long ESTIMATE_CACHE_MILLIS = 1000;
+
+  /** A recent estimate for one day. */
+  private static final class Estimate {
+    private final String day;
+    private final long visitors;
+    private final long time;
+
+    private Estimate(String day, long visitors, long time) {
+      this.day = day;
+      this.visitors = visitors;
+      this.time = time;
+    }
+  }
+
+  // The visitors seen on this instance, by day.
+  private static final Map<String, HyperLogLog> local = new ConcurrentHashMap<>();
+  // The stored sketch of each day as of the last flush or load, by day.
+  private static final Map<String, HyperLogLog> stored = new ConcurrentHashMap<>();
+  // The version of each local sketch when it was last stored, by day. Only used by flush.
+  private static final Map<String, Long> storedVersions = new HashMap<>();
+
+  private static volatile Estimate cachedEstimate;
+
+  static {
+    Flusher.register(UniqueVisitorCounter::flush);
+  }
+
+  private UniqueVisitorCounter() {
+    // Disallow instances.
+  }
+
+  /** Records a visit by {@code visitorId}, such as the visitor's IP address. */
+  static void add(String visitorId) {
+    local.computeIfAbsent(today(), day -> new HyperLogLog()).add(visitorId);
+  }
+
+  /** Returns the estimated number of distinct visitors today, in UTC. */
+  static long getTodaysVisitors() {
+    String day = today();
+    Estimate cached = cachedEstimate;
+    long now = System.currentTimeMillis();
+    if (cached != null && cached.day.equals(day) && now - cached.time < ESTIMATE_CACHE_MILLIS) {
+      return cached.visitors;
+    }
+
+    HyperLogLog visitors = new HyperLogLog();
+    visitors.merge(stored.computeIfAbsent(day, UniqueVisitorCounter::loadSketch));
+    HyperLogLog localVisitors = local.get(day);
+    if (localVisitors != null) {
+      visitors.merge(localVisitors);
+    }
+    cachedEstimate = new Estimate(day, visitors.estimate(), now);
+    return cachedEstimate.visitors;
+  }
+
+  /**
+   * Merges every local sketch that changed since it was last stored into the stored one for its
+   * day, then drops the sketches of days before yesterday. If today's sketch is unchanged, the
+   * stored one is only read again, to pick up other instances' visitors.
+   */
+  private static void flush() {
+    String today = today();
+    String yesterday = LocalDate.now(ZoneOffset.UTC).minusDays(1).toString();
+    for (Map.Entry<String, HyperLogLog> entry : local.entrySet()) {
+      String day = entry.getKey();
+      HyperLogLog sketch = entry.getValue();
+      // Read before merging, so that values added during the merge are stored again next time.
+      long version = sketch.getVersion();
+      Long storedVersion = storedVersions.get(day);
+      if (storedVersion == null || storedVersion != version) {
+        HyperLogLog merged = mergeIntoStored(day, sketch);
+        if (merged == null) {
+          continue;
+        }
+        stored.put(day, merged);
+        storedVersions.put(day, version);
+      } else if (day.equals(today)) {
+        reloadStored(day);
+      }
+      if (!day.equals(today) && !day.equals(yesterday)) {
+        local.remove(day);
+        storedVersions.remove(day);
+      }
+    }
+    stored.keySet().removeIf(day -> !day.equals(today) && !day.equals(yesterday));
+  }
+
+  /** Reads the stored sketch for {@code day} again, keeping the last one read if that fails. */
+  private static void reloadStored(String day) {
+    try {
+      stored.put(day, fromEntity(DatastoreServiceFactory.getDatastoreService().get(getKey(day))));
+    } catch (EntityNotFoundException e) {
+      // Nothing stored yet, though this instance stored it before. Store it again next time.
+      storedVersions.remove(day);
+    } catch (RuntimeException e) {
+      System.err.println("Could not load visitors for " + day + ": " + e);
+    }
+  }
+
+  /**
+   * Merges {@code sketch} into the stored sketch for {@code day}.
+   *
+   * @return The merged sketch, or null if it could not be stored.
+   */
+  private static HyperLogLog mergeIntoStored(String day, HyperLogLog sketch) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Key key = getKey(day);
+    for (int attempt = 1; attempt <= MAX_COMMIT_ATTEMPTS; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        HyperLogLog merged;
+        try {
+          merged = fromEntity(datastore.get(transaction, key));
+        } catch (EntityNotFoundException e) {
+          merged = new HyperLogLog();
+        }
+        merged.merge(sketch);
+
+        Entity entity = new Entity(key);
+        entity.setProperty("registers", new Blob(merged.toBytes()));
+        datastore.put(transaction, entity);
+        transaction.commit();
+        return merged;
+      } catch (ConcurrentModificationException e) {
+        // Another instance updated the same day. Try again.
+      } catch (RuntimeException e) {
+        System.err.println("Could not store visitors for " + day + ": " + e);
+        return null;
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    System.err.println("Could not store visitors for " + day + " after " + MAX_COMMIT_ATTEMPTS
+        + " attempts");
+    return null;
+  }
+
+  /** Returns the stored sketch for {@code day}, or an empty one if it can't be read. */
+  private static HyperLogLog loadSketch(String day) {
+    try {
+      return fromEntity(DatastoreServiceFactory.getDatastoreService().get(getKey(day)));
+    } catch (EntityNotFoundException e) {
+      return new HyperLogLog();
+    } catch (RuntimeException e) {
+      System.err.println("Could not load visitors for " + day + ": " + e);
+      return new HyperLogLog();
+    }
+  }
+
+  private static HyperLogLog fromEntity(Entity entity) {
+    return HyperLogLog.fromBytes(((Blob) entity.getProperty("registers")).getBytes());
+  }
+
+  private static Key getKey(String day) {
+    return KeyFactory.createKey("VisitorSketch", day);
+  }
+
+  private static String today() {
+    return LocalDate.now(ZoneOffset.UTC).toString();
+  }
+}
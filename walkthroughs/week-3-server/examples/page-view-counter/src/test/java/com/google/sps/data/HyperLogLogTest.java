@@ -0,0 +1,127 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code HyperLogLog} stores, merges and estimates as documented. */
+@RunWith(JUnit4.class)
+public final class HyperLogLogTest {
+  // The standard error with 16384 registers is about 0.8%, so this is about three of them.
+  private static final double TOLERANCE = 0.025;
+
+  private static HyperLogLog sketchOf(int first, int last) {
+    HyperLogLog sketch = new HyperLogLog();
+    for (int i = first; i < last; i++) {
+      sketch.add("visitor-" + i);
+    }
+    return sketch;
+  }
+
+  private static void assertEstimateNear(long expected, HyperLogLog sketch) {
+    long actual = sketch.estimate();
+    Assert.assertTrue("expected about " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected * TOLERANCE);
+  }
+
+  @Test
+  public void emptySketchEstimatesZero() {
+    Assert.assertEquals(0, new HyperLogLog().estimate());
+  }
+
+  @Test
+  public void estimatesThousandValues() {
+    assertEstimateNear(1000, sketchOf(0, 1000));
+  }
+
+  @Test
+  public void estimatesMillionValues() {
+    assertEstimateNear(1000000, sketchOf(0, 1000000));
+  }
+
+  @Test
+  public void repeatedValuesAreCountedOnce() {
+    HyperLogLog sketch = sketchOf(0, 1000);
+    byte[] before = sketch.toBytes();
+    for (int i = 0; i < 1000; i++) {
+      sketch.add("visitor-" + i);
+    }
+
+    Assert.assertArrayEquals(before, sketch.toBytes());
+  }
+
+  @Test
+  public void bytesRoundTrip() {
+    HyperLogLog sketch = sketchOf(0, 100000);
+    byte[] bytes = sketch.toBytes();
+    HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+
+    Assert.assertEquals(HyperLogLog.SERIALIZED_SIZE, bytes.length);
+    Assert.assertArrayEquals(bytes, restored.toBytes());
+    Assert.assertEquals(sketch.estimate(), restored.estimate());
+  }
+
+  @Test
+  public void emptySketchBytesRoundTrip() {
+    byte[] bytes = new HyperLogLog().toBytes();
+
+    Assert.assertArrayEquals(bytes, HyperLogLog.fromBytes(bytes).toBytes());
+    Assert.assertEquals(0, HyperLogLog.fromBytes(bytes).estimate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fromBytesRejectsWrongSize() {
+    HyperLogLog.fromBytes(new byte[HyperLogLog.SERIALIZED_SIZE - 1]);
+  }
+
+  @Test
+  public void mergeIsIdempotent() {
+    HyperLogLog sketch = sketchOf(0, 5000);
+    HyperLogLog other = sketchOf(2500, 7500);
+    sketch.merge(other);
+    byte[] mergedOnce = sketch.toBytes();
+
+    sketch.merge(other);
+    sketch.merge(sketch);
+
+    Assert.assertArrayEquals(mergedOnce, sketch.toBytes());
+  }
+
+  @Test
+  public void mergeGivesSketchOfAllValues() {
+    HyperLogLog sketch = sketchOf(0, 5000);
+    sketch.merge(sketchOf(2500, 7500));
+
+    Assert.assertArrayEquals(sketchOf(0, 7500).toBytes(), sketch.toBytes());
+    assertEstimateNear(7500, sketch);
+  }
+
+  @Test
+  public void versionChangesOnlyWhenSketchDoes() {
+    HyperLogLog sketch = sketchOf(0, 1000);
+    long version = sketch.getVersion();
+
+    sketch.add("visitor-0");
+    sketch.merge(sketchOf(0, 1000));
+    Assert.assertEquals(version, sketch.getVersion());
+
+    sketch.add("visitor-1000");
+    sketch.merge(sketchOf(1000, 2000));
+    Assert.assertNotEquals(version, sketch.getVersion());
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Listens for garbage collections to record how long each took and how much was allocated between
+ * them.
+ *
+ * Monitoring begins when {@code start} is called, which a listener does when the app starts. The
+ * allocation total is the heap used before each collection minus the heap left after the one
+ * before it, or the heap used when monitoring began for the first collection. For concurrent
+ * collectors, a collection's duration includes time spent alongside the application, so it is an
+ * upper bound on the pause. On JVMs without the com.sun.management notifications, nothing is
+ * recorded and {@code isAvailable} returns false.
+ */
+public final class GcMonitor {
+  // In microseconds.
+  private static final Histogram durations = new Histogram();
+  private static final Set<String> heapPools = new HashSet<>();
+
+  // Guarded by GcMonitor.class.
+  private static boolean started = false;
+  private static boolean available = false;
+  // JVM uptime when monitoring began and when the latest collection ended, in milliseconds.
+  private static long startMillis;
+  private static long lastGcEndMillis;
+  private static long heapUsedAfterLastGc;
+  // The bytes allocated between startMillis and lastGcEndMillis.
+  private static long allocatedBytes = 0;
+
+  private GcMonitor() {
+    // Disallow instances.
+  }
+
+  /**
+   * Starts recording collections, if it hasn't started already.
+   */
+  public static synchronized void start() {
+    if (started) {
+      return;
+    }
+    started = true;
+
+    try {
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          heapPools.add(pool.getName());
+        }
+      }
+      startMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+      lastGcEndMillis = startMillis;
+      heapUsedAfterLastGc = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        if (collector instanceof NotificationEmitter) {
+          ((NotificationEmitter) collector)
+              .addNotificationListener(GcMonitor::handleNotification, null, null);
+          available = true;
+        }
+      }
+    } catch (LinkageError | RuntimeException e) {
+      System.err.println("Could not listen for garbage collections: " + e);
+    }
+  }
+
+  /** Returns whether collections are being recorded. */
+  public static synchronized boolean isAvailable() {
+    return available;
+  }
+
+  /** Returns the duration of every collection since monitoring began, in microseconds. */
+  public static Histogram.Snapshot getDurations() {
+    return durations.getSnapshot();
+  }
+
+  /**
+   * Returns the bytes allocated on the heap from when monitoring began to the latest collection.
+   */
+  public static synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns the bytes allocated on the heap per second, from when monitoring began to the latest
+   * collection, or 0 if there has been no collection since.
+   */
+  public static synchronized long getAllocatedBytesPerSecond() {
+    long intervalMillis = lastGcEndMillis - startMillis;
+    return intervalMillis <= 0 ? 0 : allocatedBytes * 1000 / intervalMillis;
+  }
+
+  private static void handleNotification(Notification notification, Object handback) {
+    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+        .equals(notification.getType())) {
+      return;
+    }
+
+    GcInfo info = GarbageCollectionNotificationInfo
+        .from((CompositeData) notification.getUserData()).getGcInfo();
+    durations.record(info.getDuration() * 1000);
+
+    long before = getHeapUsed(info.getMemoryUsageBeforeGc());
+    long after = getHeapUsed(info.getMemoryUsageAfterGc());
+    synchronized (GcMonitor.class) {
+      allocatedBytes += Math.max(0, before - heapUsedAfterLastGc);
+      heapUsedAfterLastGc = after;
+      lastGcEndMillis = Math.max(lastGcEndMillis, info.getEndTime());
+    }
+  }
+
+  private static long getHeapUsed(Map<String, MemoryUsage> usageByPool) {
+    long used = 0;
+    for (Map.Entry<String, MemoryUsage> entry : usageByPool.entrySet()) {
+      if (heapPools.contains(entry.getKey())) {
+        used += entry.getValue().getUsed();
+      }
+    }
+    return used;
+  }
+}
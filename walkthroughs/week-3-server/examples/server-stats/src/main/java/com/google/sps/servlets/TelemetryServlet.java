@@ -0,0 +1,154 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.metrics.GcMonitor;
+import com.google.sps.metrics.Histogram;
+import com.google.sps.metrics.RequestMetrics;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import javax.servlet.annotation.HttpConstraint;
+import javax.servlet.annotation.ServletSecurity;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns telemetry about this instance as JSON: the request rate, status codes, and latency and
+ * response size percentiles of each route, garbage collection counts, durations and allocation
+ * rate, thread counts and heap usage.
+ *
+ * The JSON is streamed straight to the response with Gson's {@code JsonWriter} rather than built up
+ * as a string first. Like the metrics, it is only served to the app's admins.
+ */
+@WebServlet("/telemetry")
+@ServletSecurity(@HttpConstraint(rolesAllowed = "admin"))
+public final class TelemetryServlet extends HttpServlet {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+  private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("application/json;");
+    JsonWriter json = new JsonWriter(response.getWriter());
+    json.beginObject();
+
+    json.name("uptimeMillis").value(ManagementFactory.getRuntimeMXBean().getUptime());
+    writeRoutes(json);
+    writeGarbageCollection(json);
+    writeThreads(json);
+    writeMemory(json);
+
+    json.endObject();
+    json.flush();
+  }
+
+  private void writeRoutes(JsonWriter json) throws IOException {
+    json.name("routes").beginObject();
+    for (Map.Entry<String, RequestMetrics.Route> entry : RequestMetrics.getRoutes().entrySet()) {
+      RequestMetrics.Route route = entry.getValue();
+      json.name(entry.getKey()).beginObject();
+      json.name("count").value(route.getCount());
+      json.name("perSecond").value(route.getPerSecond());
+      json.name("latencyMicros");
+      writeHistogram(json, route.getLatency());
+      json.name("sizeBytes");
+      writeHistogram(json, route.getSize());
+      json.name("statuses").beginObject();
+      for (int i = 0; i < STATUS_CLASSES.length; i++) {
+        json.name(STATUS_CLASSES[i]).value(route.getStatusCount(i));
+      }
+      json.endObject();
+      json.endObject();
+    }
+    json.endObject();
+  }
+
+  private void writeGarbageCollection(JsonWriter json) throws IOException {
+    json.name("gc").beginObject();
+    json.name("collectors").beginArray();
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      json.beginObject();
+      json.name("name").value(collector.getName());
+      json.name("count").value(collector.getCollectionCount());
+      json.name("timeMillis").value(collector.getCollectionTime());
+      json.endObject();
+    }
+    json.endArray();
+
+    if (GcMonitor.isAvailable()) {
+      json.name("durationMicros");
+      writeHistogram(json, GcMonitor.getDurations());
+      json.name("allocatedBytes").value(GcMonitor.getAllocatedBytes());
+      json.name("allocatedBytesPerSecond").value(GcMonitor.getAllocatedBytesPerSecond());
+    }
+    json.endObject();
+  }
+
+  private void writeThreads(JsonWriter json) throws IOException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    json.name("threads").beginObject();
+    json.name("live").value(threads.getThreadCount());
+    json.name("daemon").value(threads.getDaemonThreadCount());
+    json.name("peak").value(threads.getPeakThreadCount());
+    json.name("started").value(threads.getTotalStartedThreadCount());
+    json.endObject();
+  }
+
+  private void writeMemory(JsonWriter json) throws IOException {
+    json.name("memory").beginObject();
+    json.name("heap");
+    writeUsage(json, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage());
+    json.name("heapPools").beginObject();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        json.name(pool.getName());
+        writeUsage(json, pool.getUsage());
+      }
+    }
+    json.endObject();
+    json.endObject();
+  }
+
+  private void writeUsage(JsonWriter json, MemoryUsage usage) throws IOException {
+    json.beginObject();
+    json.name("used").value(usage.getUsed());
+    json.name("committed").value(usage.getCommitted());
+    // -1 if there is no limit.
+    json.name("max").value(usage.getMax());
+    json.endObject();
+  }
+
+  private void writeHistogram(JsonWriter json, Histogram.Snapshot histogram)
+      throws IOException {
+    json.beginObject();
+    json.name("count").value(histogram.getCount());
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      json.name(PERCENTILE_NAMES[i]).value(histogram.getPercentile(PERCENTILES[i]));
+    }
+    json.name("max").value(histogram.getMax());
+    json.endObject();
+  }
+}
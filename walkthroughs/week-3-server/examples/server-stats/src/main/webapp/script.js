@@ -33,6 +33,22 @@ function getServerStats() {
   });
 }
 
+/**
+ * Fetches telemetry from the server and shows it as indented JSON. Only admins may see it.
+ */
+function getTelemetry() {
+  const container = document.getElementById('telemetry-container');
+  fetch('/telemetry').then((response) => {
+    if (!response.ok) {
+      container.innerText = 'Telemetry is only available to admins.';
+      return;
+    }
+    return response.json().then((telemetry) => {
+      container.innerText = JSON.stringify(telemetry, null, 2);
+    });
+  });
+}
+
 /** Creates an <li> element containing text. */
 function createListElement(text) {
   const liElement = document.createElement('li');
@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.Repositories;
+import com.google.sps.storage.TaskRepository;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet responsible for deleting many tasks at once. Takes either one "id" parameter per task,
+ * or "all=true" to delete every task. Deleting every task is only allowed for a logged in admin,
+ * who must also pass "confirm=delete-all-tasks".
+ */
+@WebServlet(urlPatterns = "/delete-tasks", asyncSupported = true)
+public class DeleteTasksServlet extends HttpServlet {
+  private static final String DELETE_ALL_CONFIRMATION = "delete-all-tasks";
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::deleteTasks);
+  }
+
+  private void deleteTasks(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    TaskRepository tasks = Repositories.getTaskRepository();
+
+    List<Long> ids;
+    if ("true".equals(request.getParameter("all"))) {
+      UserService userService = UserServiceFactory.getUserService();
+      if (!userService.isUserLoggedIn()) {
+        response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+        return;
+      }
+      if (!userService.isUserAdmin()) {
+        response.sendError(HttpServletResponse.SC_FORBIDDEN);
+        return;
+      }
+      if (!DELETE_ALL_CONFIRMATION.equals(request.getParameter("confirm"))) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "Deleting every task requires confirm=" + DELETE_ALL_CONFIRMATION);
+        return;
+      }
+      ids = tasks.getAllIds();
+    } else {
+      ids = parseIds(request.getParameterValues("id"));
+      if (ids == null) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid task ids");
+        return;
+      }
+    }
+
+    tasks.deleteAll(ids);
+  }
+
+  /**
+   * Returns the given task ids as numbers, or null if there are none or any of them is not a
+   * number.
+   */
+  private List<Long> parseIds(String[] idStrings) {
+    if (idStrings == null) {
+      return null;
+    }
+
+    List<Long> ids = new ArrayList<>();
+    for (String id : idStrings) {
+      try {
+        ids.add(Long.parseLong(id));
+      } catch (NumberFormatException e) {
+        System.err.println("Could not convert to long: " + id);
+        return null;
+      }
+    }
+    return ids;
+  }
+}
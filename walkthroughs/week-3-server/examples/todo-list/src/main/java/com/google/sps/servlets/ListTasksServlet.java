@@ -14,16 +14,11 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.gson.Gson;
 import com.google.sps.data.Task;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -31,25 +26,18 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /** Servlet responsible for listing tasks. */
-@WebServlet("/list-tasks")
+@WebServlet(urlPatterns = "/list-tasks", asyncSupported = true)
 public class ListTasksServlet extends HttpServlet {
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Query query = new Query("Task").addSort("timestamp", SortDirection.DESCENDING);
-
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery results = datastore.prepare(query);
-
-    List<Task> tasks = new ArrayList<>();
-    for (Entity entity : results.asIterable()) {
-      long id = entity.getKey().getId();
-      String title = (String) entity.getProperty("title");
-      long timestamp = (long) entity.getProperty("timestamp");
+    RequestExecutor.execute(request, response, this::writeTasks);
+  }
 
-      Task task = new Task(id, title, timestamp);
-      tasks.add(task);
-    }
+  /** Writes every task to {@code response} as JSON. */
+  private void writeTasks(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    List<Task> tasks = Repositories.getTaskRepository().getAllNewestFirst();
 
     Gson gson = new Gson();
 
@@ -0,0 +1,81 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Key;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Deletes many Datastore entities with as few round trips as possible.
+ *
+ * Keys are split into batches of the most keys Datastore accepts in one delete call, and up to
+ * {@code MAX_BATCHES_IN_FLIGHT} batches are deleted at once using the async Datastore API.
+ */
+final class BatchDeleter {
+  // Datastore accepts up to 500 keys per delete call.
+  private static final int BATCH_SIZE = 500;
+  private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
+  private BatchDeleter() {
+    // Disallow instances.
+  }
+
+  /**
+   * Deletes every entity in {@code keys}, returning once all of them are deleted.
+   *
+   * @throws IllegalStateException If any batch could not be deleted.
+   */
+  static void deleteAll(Iterable<Key> keys) {
+    AsyncDatastoreService datastore = DatastoreServiceFactory.getAsyncDatastoreService();
+    Queue<Future<Void>> inFlight = new ArrayDeque<>();
+
+    List<Key> batch = new ArrayList<>();
+    for (Key key : keys) {
+      batch.add(key);
+      if (batch.size() == BATCH_SIZE) {
+        if (inFlight.size() == MAX_BATCHES_IN_FLIGHT) {
+          await(inFlight.remove());
+        }
+        inFlight.add(datastore.delete(batch));
+        batch = new ArrayList<>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      inFlight.add(datastore.delete(batch));
+    }
+
+    while (!inFlight.isEmpty()) {
+      await(inFlight.remove());
+    }
+  }
+
+  private static void await(Future<Void> deletion) {
+    try {
+      deletion.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while deleting", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not delete batch", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.Task;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Stores tasks in Datastore as entities of kind "Task". */
+final class DatastoreTaskRepository implements TaskRepository {
+
+  @Override
+  public List<Task> getAllNewestFirst() {
+    Query query = new Query("Task").addSort("timestamp", SortDirection.DESCENDING);
+    Iterable<Entity> results = Projections.fetch(query,
+        new PropertyProjection("title", String.class),
+        new PropertyProjection("timestamp", Long.class));
+
+    List<Task> tasks = new ArrayList<>();
+    for (Entity entity : results) {
+      long id = entity.getKey().getId();
+      String title = (String) entity.getProperty("title");
+      long timestamp = (long) entity.getProperty("timestamp");
+
+      Task task = new Task(id, title, timestamp);
+      tasks.add(task);
+    }
+    return tasks;
+  }
+
+  /** Uses a keys-only query so that no task contents are read. */
+  @Override
+  public List<Long> getAllIds() {
+    Query query = new Query("Task").setKeysOnly();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+    List<Long> ids = new ArrayList<>();
+    FetchOptions options = FetchOptions.Builder.withChunkSize(500);
+    for (Entity entity : datastore.prepare(query).asIterable(options)) {
+      ids.add(entity.getKey().getId());
+    }
+    return ids;
+  }
+
+  @Override
+  public void add(String title, long timestamp) {
+    Entity taskEntity = new Entity("Task");
+    taskEntity.setProperty("title", title);
+    taskEntity.setProperty("timestamp", timestamp);
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    datastore.put(taskEntity);
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids) {
+    List<Key> keys = new ArrayList<>();
+    for (long id : ids) {
+      keys.add(KeyFactory.createKey("Task", id));
+    }
+    BatchDeleter.deleteAll(keys);
+  }
+}
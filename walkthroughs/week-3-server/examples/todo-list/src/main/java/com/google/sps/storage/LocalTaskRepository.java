@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Task;
+import com.google.sps.logstore.LogStore;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Stores tasks in a {@code LogStore} on local disk, for running without Datastore. */
+final class LocalTaskRepository implements TaskRepository {
+
+  private static final LogStore.Codec<Task> CODEC = new LogStore.Codec<Task>() {
+    @Override
+    public void write(DataOutput out, Task task) throws IOException {
+      out.writeLong(task.getId());
+      out.writeUTF(task.getTitle());
+      out.writeLong(task.getTimestamp());
+    }
+
+    @Override
+    public Task read(DataInput in) throws IOException {
+      return new Task(in.readLong(), in.readUTF(), in.readLong());
+    }
+  };
+
+  private final LogStore<Task> store;
+
+  LocalTaskRepository(Path file) throws IOException {
+    store = LogStore.open(file, CODEC, Task::getTimestamp);
+  }
+
+  @Override
+  public List<Task> getAllNewestFirst() throws IOException {
+    List<Task> tasks = new ArrayList<>();
+    for (LogStore.Record<Task> record : store.list(null, Integer.MAX_VALUE)) {
+      tasks.add(record.getValue());
+    }
+    return tasks;
+  }
+
+  @Override
+  public List<Long> getAllIds() {
+    return store.ids();
+  }
+
+  @Override
+  public void add(String title, long timestamp) throws IOException {
+    long id = store.nextId();
+    store.put(id, new Task(id, title, timestamp));
+  }
+
+  @Override
+  public void deleteAll(Collection<Long> ids) throws IOException {
+    for (long id : ids) {
+      store.delete(id);
+    }
+  }
+}
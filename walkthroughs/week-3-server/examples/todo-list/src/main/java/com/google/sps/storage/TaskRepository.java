@@ -0,0 +1,36 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Task;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/** Stores the tasks on the todo list. */
+public interface TaskRepository {
+
+  /** Returns every task, newest first. */
+  List<Task> getAllNewestFirst() throws IOException;
+
+  /** Returns the id of every task. */
+  List<Long> getAllIds() throws IOException;
+
+  /** Stores a new task. */
+  void add(String title, long timestamp) throws IOException;
+
+  /** Deletes the tasks with the given ids. Ids that have no task are ignored. */
+  void deleteAll(Collection<Long> ids) throws IOException;
+}
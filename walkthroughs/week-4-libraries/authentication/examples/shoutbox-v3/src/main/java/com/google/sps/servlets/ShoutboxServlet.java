@@ -14,16 +14,18 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Message;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -31,10 +33,22 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/shoutbox")
 public class ShoutboxServlet extends HttpServlet {
+  // The most messages shown on the page.
+  private static final int MAX_MESSAGES = 200;
+  // Messages rendered between flushes. Matches the first Datastore batch.
+  private static final int CHUNK_SIZE = 20;
+  // Small enough that each chunk is sent as soon as it is flushed.
+  private static final int BUFFER_SIZE = 4096;
 
+  /**
+   * Streams the page to the browser as it is rendered. The header and form are flushed before any
+   * messages are read, and the messages are then flushed a chunk at a time, so the browser can
+   * start drawing the page before the whole list has been read.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("text/html;");
+    response.setBufferSize(BUFFER_SIZE);
     PrintWriter out = response.getWriter();
     out.println("<h1>Shoutbox</h1>");
 
@@ -55,15 +69,50 @@ public class ShoutboxServlet extends HttpServlet {
 
     // Everybody can see the messages
     out.println("<ul>");
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Query query = new Query("Message").addSort("timestamp", SortDirection.DESCENDING);
-    PreparedQuery results = datastore.prepare(query);
-    for (Entity entity : results.asIterable()) {
-      String text = (String) entity.getProperty("text");
-      String email = (String) entity.getProperty("email");
-      out.println("<li>" + email + ": " + text + "</li>");
+    out.flush();
+
+    // Read one message past the limit to find out whether any were left out.
+    Iterator<Message> messages =
+        Repositories.getMessageRepository().getNewestFirst(MAX_MESSAGES + 1).iterator();
+    int rendered = 0;
+    List<Message> chunk = new ArrayList<>();
+    while (rendered < MAX_MESSAGES && messages.hasNext()) {
+      chunk.add(messages.next());
+      rendered++;
+      if (chunk.size() == CHUNK_SIZE || rendered == MAX_MESSAGES || !messages.hasNext()) {
+        renderChunk(chunk, out);
+        out.flush();
+        chunk.clear();
+      }
     }
     out.println("</ul>");
+
+    if (messages.hasNext()) {
+      out.println("<p>Showing the newest " + MAX_MESSAGES + " messages.</p>");
+    }
+  }
+
+  /** Writes one list item per message, showing each author's nickname if they have one. */
+  private void renderChunk(List<Message> chunk, PrintWriter out) throws IOException {
+    Map<String, String> nicknames = getNicknames(chunk);
+    for (Message message : chunk) {
+      String author = nicknames.getOrDefault(message.getUserId(), message.getEmail());
+      out.println("<li>" + author + ": " + message.getText() + "</li>");
+    }
+  }
+
+  /**
+   * Returns the nicknames of the authors of {@code messages}, looking every distinct author up at
+   * once rather than one message at a time. Authors without a nickname are left out.
+   */
+  private Map<String, String> getNicknames(List<Message> messages) throws IOException {
+    Set<String> userIds = new HashSet<>();
+    for (Message message : messages) {
+      if (message.getUserId() != null) {
+        userIds.add(message.getUserId());
+      }
+    }
+    return Repositories.getUserInfoRepository().getNicknames(userIds);
   }
 
   @Override
@@ -79,13 +128,10 @@ public class ShoutboxServlet extends HttpServlet {
 
     String text = request.getParameter("text");
     String email = userService.getCurrentUser().getEmail();
+    String userId = userService.getCurrentUser().getUserId();
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Entity messageEntity = new Entity("Message");
-    messageEntity.setProperty("text", text);
-    messageEntity.setProperty("email", email);
-    messageEntity.setProperty("timestamp", System.currentTimeMillis());
-    datastore.put(messageEntity);
+    Message message = new Message(email, userId, text, System.currentTimeMillis());
+    Repositories.getMessageRepository().add(message);
 
     // Redirect to /shoutbox. The request will be routed to the doGet() function above.
     response.sendRedirect("/shoutbox");
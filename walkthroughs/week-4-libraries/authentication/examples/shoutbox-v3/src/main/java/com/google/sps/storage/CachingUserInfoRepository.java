@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps recently used nicknames in memory in front of another {@code UserInfoRepository}.
+ *
+ * Only the users missing from the cache are looked up, all in one call, and users without a
+ * nickname are cached too. Entries expire after {@code EXPIRATION_MILLIS} so that nickname changes
+ * show up.
+ */
+final class CachingUserInfoRepository implements UserInfoRepository {
+  private static final int CACHE_SIZE = 10000;
+  private static final long EXPIRATION_MILLIS = 60000;
+
+  /** A cached nickname, which is null if the user has not set one. */
+  private static final class CachedNickname {
+    private final String nickname;
+    private final long expirationTime;
+
+    private CachedNickname(String nickname, long expirationTime) {
+      this.nickname = nickname;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private final UserInfoRepository storage;
+  // Least recently used entries are evicted first.
+  private final Map<String, CachedNickname> cache =
+      Collections.synchronizedMap(new LinkedHashMap<String, CachedNickname>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedNickname> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  CachingUserInfoRepository(UserInfoRepository storage) {
+    this.storage = storage;
+  }
+
+  @Override
+  public Map<String, String> getNicknames(Collection<String> ids) throws IOException {
+    long now = System.currentTimeMillis();
+    Map<String, String> nicknames = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String id : ids) {
+      CachedNickname cached = cache.get(id);
+      if (cached == null || now > cached.expirationTime) {
+        missing.add(id);
+      } else if (cached.nickname != null) {
+        nicknames.put(id, cached.nickname);
+      }
+    }
+    if (missing.isEmpty()) {
+      return nicknames;
+    }
+
+    Map<String, String> loaded = storage.getNicknames(missing);
+    long expirationTime = System.currentTimeMillis() + EXPIRATION_MILLIS;
+    for (String id : missing) {
+      cache.put(id, new CachedNickname(loaded.get(id), expirationTime));
+    }
+    nicknames.putAll(loaded);
+    return nicknames;
+  }
+}
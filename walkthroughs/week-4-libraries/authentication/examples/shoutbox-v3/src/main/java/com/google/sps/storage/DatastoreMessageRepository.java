@@ -0,0 +1,83 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.Message;
+import java.util.Iterator;
+
+/** Stores messages in Datastore as entities of kind "Message". */
+final class DatastoreMessageRepository implements MessageRepository {
+  // Messages fetched by the first round trip.
+  private static final int FIRST_BATCH_SIZE = 20;
+  // Messages fetched by each later round trip.
+  private static final int BATCH_SIZE = 100;
+
+  /**
+   * {@inheritDoc}
+   *
+   * The first batch is kept small so that the first messages can be shown quickly, and the rest
+   * are fetched in larger batches. Reads whole entities rather than a projection, because a
+   * projection on "userId" would leave out messages posted before it was stored.
+   */
+  @Override
+  public Iterable<Message> getNewestFirst(int limit) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Query query = new Query("Message").addSort("timestamp", SortDirection.DESCENDING);
+    FetchOptions options = FetchOptions.Builder.withLimit(limit)
+        .prefetchSize(Math.min(limit, FIRST_BATCH_SIZE))
+        .chunkSize(BATCH_SIZE);
+    Iterable<Entity> results = datastore.prepare(query).asIterable(options);
+
+    return () -> {
+      Iterator<Entity> entities = results.iterator();
+      return new Iterator<Message>() {
+        @Override
+        public boolean hasNext() {
+          return entities.hasNext();
+        }
+
+        @Override
+        public Message next() {
+          return toMessage(entities.next());
+        }
+      };
+    };
+  }
+
+  private static Message toMessage(Entity entity) {
+    String email = (String) entity.getProperty("email");
+    String userId = (String) entity.getProperty("userId");
+    String text = (String) entity.getProperty("text");
+    long timestamp = (long) entity.getProperty("timestamp");
+    return new Message(email, userId, text, timestamp);
+  }
+
+  @Override
+  public void add(Message message) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity messageEntity = new Entity("Message");
+    messageEntity.setProperty("text", message.getText());
+    messageEntity.setProperty("email", message.getEmail());
+    messageEntity.setProperty("userId", message.getUserId());
+    messageEntity.setProperty("timestamp", message.getTimestamp());
+    datastore.put(messageEntity);
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reads user information from Datastore. */
+final class DatastoreUserInfoRepository implements UserInfoRepository {
+  // Datastore accepts up to 1000 keys per get call.
+  private static final int GET_BATCH_SIZE = 1000;
+
+  /** Looks every user up by key, with one multi-key get per 1000 users. */
+  @Override
+  public Map<String, String> getNicknames(Collection<String> ids) {
+    List<Key> keys = new ArrayList<>();
+    for (String id : ids) {
+      keys.add(KeyFactory.createKey("UserInfo", id));
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Map<String, String> nicknames = new HashMap<>();
+    for (int start = 0; start < keys.size(); start += GET_BATCH_SIZE) {
+      List<Key> batch = keys.subList(start, Math.min(keys.size(), start + GET_BATCH_SIZE));
+      for (Entity entity : datastore.get(batch).values()) {
+        String nickname = (String) entity.getProperty("nickname");
+        if (nickname != null) {
+          nicknames.put(entity.getKey().getName(), nickname);
+        }
+      }
+    }
+    return nicknames;
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Message;
+import com.google.sps.logstore.LogStore;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Stores messages in a {@code LogStore} on local disk, for running without Datastore. */
+final class LocalMessageRepository implements MessageRepository {
+
+  private static final LogStore.Codec<Message> CODEC = new LogStore.Codec<Message>() {
+    @Override
+    public void write(DataOutput out, Message message) throws IOException {
+      out.writeUTF(message.getEmail());
+      out.writeBoolean(message.getUserId() != null);
+      if (message.getUserId() != null) {
+        out.writeUTF(message.getUserId());
+      }
+      out.writeUTF(message.getText());
+      out.writeLong(message.getTimestamp());
+    }
+
+    @Override
+    public Message read(DataInput in) throws IOException {
+      String email = in.readUTF();
+      String userId = in.readBoolean() ? in.readUTF() : null;
+      return new Message(email, userId, in.readUTF(), in.readLong());
+    }
+  };
+
+  private final LogStore<Message> store;
+
+  LocalMessageRepository(Path file) throws IOException {
+    store = LogStore.open(file, CODEC, Message::getTimestamp);
+  }
+
+  @Override
+  public Iterable<Message> getNewestFirst(int limit) throws IOException {
+    List<Message> messages = new ArrayList<>();
+    for (LogStore.Record<Message> record : store.list(null, limit)) {
+      messages.add(record.getValue());
+    }
+    return messages;
+  }
+
+  @Override
+  public void add(Message message) throws IOException {
+    store.put(store.nextId(), message);
+  }
+}
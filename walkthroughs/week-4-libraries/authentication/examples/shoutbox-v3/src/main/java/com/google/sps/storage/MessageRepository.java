@@ -0,0 +1,31 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Message;
+import java.io.IOException;
+
+/** Stores the messages posted to the shoutbox. */
+public interface MessageRepository {
+
+  /**
+   * Returns up to {@code limit} messages, newest first. The messages may be read from storage
+   * lazily, a batch at a time, as the result is iterated over.
+   */
+  Iterable<Message> getNewestFirst(int limit) throws IOException;
+
+  /** Stores a new message. */
+  void add(Message message) throws IOException;
+}
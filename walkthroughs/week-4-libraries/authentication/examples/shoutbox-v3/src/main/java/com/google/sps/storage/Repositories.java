@@ -0,0 +1,84 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Provides the repositories chosen in appengine-web.xml.
+ *
+ * The "sps.storage" system property selects "datastore" (the default) or "local". The local
+ * repositories keep their data in log files under the "sps.storageDirectory" directory, which
+ * defaults to a directory in the system temporary directory, so the servlets can run and be load
+ * tested without Datastore.
+ */
+public final class Repositories {
+  private static final String LOCAL = "local";
+
+  // Created on first use. Guarded by Repositories.class.
+  private static MessageRepository messages;
+  private static UserInfoRepository userInfo;
+
+  private Repositories() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the message repository, creating it on first use.
+   *
+   * @throws UncheckedIOException If the local store can't be opened.
+   */
+  public static synchronized MessageRepository getMessageRepository() {
+    if (messages == null) {
+      try {
+        messages = isLocal()
+            ? new LocalMessageRepository(getStorageFile("messages.log"))
+            : new DatastoreMessageRepository();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not open local message store", e);
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Returns the user info repository, creating it on first use. Nicknames are cached in memory
+   * in front of Datastore. Nothing in this example sets nicknames, so when running locally there
+   * are none.
+   */
+  public static synchronized UserInfoRepository getUserInfoRepository() {
+    if (userInfo == null) {
+      userInfo = new CachingUserInfoRepository(
+          isLocal() ? ids -> Collections.emptyMap() : new DatastoreUserInfoRepository());
+    }
+    return userInfo;
+  }
+
+  private static boolean isLocal() {
+    return LOCAL.equals(System.getProperty("sps.storage"));
+  }
+
+  private static Path getStorageFile(String name) {
+    String directory = System.getProperty("sps.storageDirectory");
+    if (directory == null) {
+      return Paths.get(System.getProperty("java.io.tmpdir"), "sps-storage", name);
+    }
+    return Paths.get(directory, name);
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads information about users, stored as entities of kind "UserInfo" named by user id, as the
+ * user-nicknames example writes them.
+ */
+public interface UserInfoRepository {
+
+  /**
+   * Returns the nicknames of the users with the given ids, leaving out users who have not set one.
+   */
+  Map<String, String> getNicknames(Collection<String> ids) throws IOException;
+}
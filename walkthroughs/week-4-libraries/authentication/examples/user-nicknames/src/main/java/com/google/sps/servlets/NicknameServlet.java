@@ -14,15 +14,12 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -30,6 +27,8 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/nickname")
 public class NicknameServlet extends HttpServlet {
+  // Datastore refuses string properties longer than this many bytes.
+  private static final int MAX_NICKNAME_BYTES = 1500;
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -61,14 +60,12 @@ public class NicknameServlet extends HttpServlet {
     }
 
     String nickname = request.getParameter("nickname");
+    if (nickname == null || nickname.getBytes(StandardCharsets.UTF_8).length > MAX_NICKNAME_BYTES) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid nickname");
+      return;
+    }
     String id = userService.getCurrentUser().getUserId();
-
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Entity entity = new Entity("UserInfo", id);
-    entity.setProperty("id", id);
-    entity.setProperty("nickname", nickname);
-    // The put() function automatically inserts new data or updates existing data based on ID
-    datastore.put(entity);
+    Repositories.getUserInfoRepository().setNickname(id, nickname);
 
     response.sendRedirect("/home");
   }
@@ -76,17 +73,8 @@ public class NicknameServlet extends HttpServlet {
   /**
    * Returns the nickname of the user with id, or empty String if the user has not set a nickname.
    */
-  private String getUserNickname(String id) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Query query =
-        new Query("UserInfo")
-            .setFilter(new Query.FilterPredicate("id", Query.FilterOperator.EQUAL, id));
-    PreparedQuery results = datastore.prepare(query);
-    Entity entity = results.asSingleEntity();
-    if (entity == null) {
-      return "";
-    }
-    String nickname = (String) entity.getProperty("nickname");
-    return nickname;
+  private String getUserNickname(String id) throws IOException {
+    String nickname = Repositories.getUserInfoRepository().getNickname(id);
+    return nickname == null ? "" : nickname;
   }
 }
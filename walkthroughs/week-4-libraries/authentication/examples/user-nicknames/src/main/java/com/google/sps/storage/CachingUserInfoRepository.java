@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used nicknames in memory in front of another {@code UserInfoRepository}.
+ *
+ * Nicknames are looked up on every authenticated page view, so each one is read from storage at
+ * most once per {@code EXPIRATION_MILLIS}, including users who have not set a nickname yet. Writes
+ * go to storage and then to the cache, so a user sees their new nickname straight away. Writes
+ * made through other instances show up once the cached entry expires.
+ */
+final class CachingUserInfoRepository implements UserInfoRepository {
+  private static final int CACHE_SIZE = 10000;
+  private static final long EXPIRATION_MILLIS = 60000;
+
+  /** A cached nickname, which is null if the user has not set one. */
+  private static final class CachedNickname {
+    private final String nickname;
+    private final long expirationTime;
+
+    private CachedNickname(String nickname, long expirationTime) {
+      this.nickname = nickname;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private final UserInfoRepository storage;
+  // Least recently used entries are evicted first.
+  private final Map<String, CachedNickname> cache =
+      Collections.synchronizedMap(new LinkedHashMap<String, CachedNickname>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedNickname> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  CachingUserInfoRepository(UserInfoRepository storage) {
+    this.storage = storage;
+  }
+
+  @Override
+  public String getNickname(String id) throws IOException {
+    CachedNickname cached = cache.get(id);
+    if (cached != null && System.currentTimeMillis() <= cached.expirationTime) {
+      return cached.nickname;
+    }
+
+    String nickname = storage.getNickname(id);
+    cache.put(id, new CachedNickname(nickname, System.currentTimeMillis() + EXPIRATION_MILLIS));
+    return nickname;
+  }
+
+  @Override
+  public void setNickname(String id, String nickname) throws IOException {
+    storage.setNickname(id, nickname);
+    cache.put(id, new CachedNickname(nickname, System.currentTimeMillis() + EXPIRATION_MILLIS));
+  }
+}
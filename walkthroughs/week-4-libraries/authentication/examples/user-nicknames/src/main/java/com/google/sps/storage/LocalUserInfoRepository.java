@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.logstore.LogStore;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores user information in a {@code LogStore} on local disk, for running without Datastore.
+ *
+ * The store is keyed by number, so each user id is given a number the first time it is stored,
+ * and the mapping is rebuilt from the stored records on open.
+ */
+final class LocalUserInfoRepository implements UserInfoRepository {
+
+  /** The stored information of one user. */
+  private static final class UserInfo {
+    private final String id;
+    private final String nickname;
+
+    private UserInfo(String id, String nickname) {
+      this.id = id;
+      this.nickname = nickname;
+    }
+  }
+
+  private static final LogStore.Codec<UserInfo> CODEC = new LogStore.Codec<UserInfo>() {
+    @Override
+    public void write(DataOutput out, UserInfo userInfo) throws IOException {
+      out.writeUTF(userInfo.id);
+      out.writeUTF(userInfo.nickname);
+    }
+
+    @Override
+    public UserInfo read(DataInput in) throws IOException {
+      return new UserInfo(in.readUTF(), in.readUTF());
+    }
+  };
+
+  private final LogStore<UserInfo> store;
+  // The store key of each user id.
+  private final Map<String, Long> keys = new ConcurrentHashMap<>();
+
+  LocalUserInfoRepository(Path file) throws IOException {
+    store = LogStore.open(file, CODEC, userInfo -> 0);
+    for (LogStore.Record<UserInfo> record : store.list(null, Integer.MAX_VALUE)) {
+      keys.put(record.getValue().id, record.getId());
+    }
+  }
+
+  @Override
+  public String getNickname(String id) throws IOException {
+    Long key = keys.get(id);
+    if (key == null) {
+      return null;
+    }
+    UserInfo userInfo = store.get(key);
+    return userInfo == null ? null : userInfo.nickname;
+  }
+
+  @Override
+  public synchronized void setNickname(String id, String nickname) throws IOException {
+    Long key = keys.get(id);
+    if (key == null) {
+      key = store.nextId();
+    }
+    store.put(key, new UserInfo(id, nickname));
+    keys.put(id, key);
+  }
+}
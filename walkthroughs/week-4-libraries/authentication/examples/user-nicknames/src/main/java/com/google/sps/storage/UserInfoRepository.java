@@ -12,15 +12,16 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
-package com.google.sps.data;
+package com.google.sps.storage;
 
-/** Represents a UFO sighting at a specific lat lng point. */
-public class UfoSighting {
-  private double lat;
-  private double lng;
+import java.io.IOException;
 
-  public UfoSighting(double lat, double lng) {
-    this.lat = lat;
-    this.lng = lng;
-  }
+/** Stores information about each user, keyed by their user id. */
+public interface UserInfoRepository {
+
+  /** Returns the nickname of the user with {@code id}, or null if they have not set one. */
+  String getNickname(String id) throws IOException;
+
+  /** Sets the nickname of the user with {@code id}, replacing any earlier one. */
+  void setNickname(String id, String nickname) throws IOException;
 }
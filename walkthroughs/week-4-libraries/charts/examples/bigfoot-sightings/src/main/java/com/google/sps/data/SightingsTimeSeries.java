@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+
+/**
+ * The number of sightings in each year, kept as a sorted array of years alongside running totals.
+ *
+ * The running total before each year makes the number of sightings over any range of years two
+ * array lookups, so sums, moving averages and downsampled series cost the same however many years
+ * they cover. Years missing from the series count as having no sightings.
+ *
+ * A series is built with {@code add} and then only read, so it may be shared once it is built.
+ */
+public final class SightingsTimeSeries {
+  private int[] years = new int[64];
+  // prefixSums[i] is the number of sightings in the years before years[i].
+  private long[] prefixSums = new long[65];
+  private int size = 0;
+
+  /**
+   * Adds the number of sightings in a year.
+   *
+   * @throws IllegalArgumentException If {@code year} is not after every year already added, or
+   *     {@code count} is negative.
+   */
+  public void add(int year, int count) {
+    if (size > 0 && year <= years[size - 1]) {
+      throw new IllegalArgumentException("Year " + year + " is not after " + years[size - 1]);
+    }
+    if (count < 0) {
+      throw new IllegalArgumentException("Negative count for " + year + ": " + count);
+    }
+    if (size == years.length) {
+      years = Arrays.copyOf(years, size * 2);
+      prefixSums = Arrays.copyOf(prefixSums, size * 2 + 1);
+    }
+    years[size] = year;
+    prefixSums[size + 1] = prefixSums[size] + count;
+    size++;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the earliest year in the series. Only valid if the series is not empty. */
+  public int getFirstYear() {
+    return years[0];
+  }
+
+  /** Returns the latest year in the series. Only valid if the series is not empty. */
+  public int getLastYear() {
+    return years[size - 1];
+  }
+
+  /** Returns the number of sightings from {@code fromYear} to {@code toYear}, inclusive. */
+  public long sum(long fromYear, long toYear) {
+    if (fromYear > toYear) {
+      return 0;
+    }
+    return prefixSums[countUpTo(toYear)] - prefixSums[countUpTo(fromYear - 1)];
+  }
+
+  /**
+   * Returns the average number of sightings per year over the {@code window} years ending with
+   * {@code year}.
+   */
+  public double movingAverage(long year, int window) {
+    return (double) sum(year - window + 1, year) / window;
+  }
+
+  /** Returns the number of years in the series up to and including {@code year}. */
+  private int countUpTo(long year) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (years[middle] <= year) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
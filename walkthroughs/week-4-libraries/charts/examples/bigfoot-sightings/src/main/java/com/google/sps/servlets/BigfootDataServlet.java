@@ -15,41 +15,103 @@
 package com.google.sps.servlets;
 
 import com.google.gson.Gson;
+import com.google.sps.csv.CsvReader;
+import com.google.sps.data.SightingsTimeSeries;
 import java.io.IOException;
 import java.util.LinkedHashMap;
-import java.util.Scanner;
+import java.util.Map;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}] */
+/**
+ * Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}
+ *
+ * By default every year is returned. These parameters narrow the series down:
+ * <ul>
+ *   <li>"from" and "to": the first and last year to include. Years outside the data are left out.
+ *   <li>"points": the most points to return, up to {@code MAX_POINTS}. Neighboring years are summed
+ *       into buckets of equal width, each keyed by its first year.
+ *   <li>"window": return the average sightings per year over this many years, ending with the last
+ *       year of each point, instead of sums.
+ * </ul>
+ */
 @WebServlet("/bigfoot-data")
 public class BigfootDataServlet extends HttpServlet {
+  // More points than any chart is wide.
+  private static final int MAX_POINTS = 5000;
 
-  private LinkedHashMap<Integer, Integer> bigfootSightings = new LinkedHashMap<>();
+  private final SightingsTimeSeries bigfootSightings = new SightingsTimeSeries();
 
   @Override
-  public void init() {
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream(
-        "/WEB-INF/bigfoot-sightings-by-year.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
-
-      Integer year = Integer.valueOf(cells[0]);
-      Integer sightings = Integer.valueOf(cells[1]);
-
-      bigfootSightings.put(year, sightings);
+  public void init() throws ServletException {
+    try {
+      CsvReader.open(getServletContext(), "/WEB-INF/bigfoot-sightings-by-year.csv")
+          .parse(bigfootSightings, (row, sightings) -> {
+            try {
+              sightings.add(row.getInt(0), row.getInt(1));
+            } catch (IllegalArgumentException e) {
+              throw new IOException(e.getMessage());
+            }
+          });
+    } catch (IOException e) {
+      throw new ServletException("Could not load bigfoot data", e);
     }
-    scanner.close();
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (bigfootSightings.isEmpty()) {
+      response.setContentType("application/json");
+      response.getWriter().println("{}");
+      return;
+    }
+
+    int from;
+    int to;
+    int points;
+    int window;
+    try {
+      from = getIntParameter(request, "from", bigfootSightings.getFirstYear());
+      to = getIntParameter(request, "to", bigfootSightings.getLastYear());
+      points = getIntParameter(request, "points", Integer.MAX_VALUE);
+      window = getIntParameter(request, "window", 0);
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid number: " + e.getMessage());
+      return;
+    }
+    if (from > to || points < 1 || window < 0) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid range, points or window");
+      return;
+    }
+
+    // Only the years with data get a point, so that the range can't ask for billions of them.
+    from = Math.max(from, bigfootSightings.getFirstYear());
+    to = Math.min(to, bigfootSightings.getLastYear());
+    points = Math.min(points, MAX_POINTS);
+
+    // Round up so that the buckets cover the whole range.
+    long years = (long) to - from + 1;
+    long bucketYears = (years + points - 1) / points;
+
+    Map<Long, Number> series = new LinkedHashMap<>();
+    for (long start = from; start <= to; start += bucketYears) {
+      long end = Math.min(to, start + bucketYears - 1);
+      series.put(start, window == 0
+          ? bigfootSightings.sum(start, end)
+          : bigfootSightings.movingAverage(end, window));
+    }
+
     response.setContentType("application/json");
     Gson gson = new Gson();
-    String json = gson.toJson(bigfootSightings);
+    String json = gson.toJson(series);
     response.getWriter().println(json);
   }
+
+  private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    String value = request.getParameter(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
 }
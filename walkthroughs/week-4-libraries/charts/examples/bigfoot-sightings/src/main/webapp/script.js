@@ -15,9 +15,19 @@
 google.charts.load('current', {'packages':['corechart']});
 google.charts.setOnLoadCallback(drawChart);
 
-/** Fetches bigfoot sightings data and uses it to create a chart. */
+/**
+ * Fetches bigfoot sightings data and uses it to create a chart. Asks for at
+ * most one point per pixel of the chart's width.
+ */
 function drawChart() {
-  fetch('/bigfoot-data').then(response => response.json())
+  const options = {
+    'title': 'Bigfoot Sightings',
+    'width':600,
+    'height':500
+  };
+
+  fetch('/bigfoot-data?points=' + options.width)
+  .then(response => response.json())
   .then((bigfootSightings) => {
     const data = new google.visualization.DataTable();
     data.addColumn('string', 'Year');
@@ -26,12 +36,6 @@ function drawChart() {
       data.addRow([year, bigfootSightings[year]]);
     });
 
-    const options = {
-      'title': 'Bigfoot Sightings',
-      'width':600,
-      'height':500
-    };
-
     const chart = new google.visualization.LineChart(
         document.getElementById('chart-container'));
     chart.draw(data, options);
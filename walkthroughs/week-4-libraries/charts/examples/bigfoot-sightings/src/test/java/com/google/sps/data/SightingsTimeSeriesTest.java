@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code SightingsTimeSeries} sums and averages ranges of years as documented. */
+@RunWith(JUnit4.class)
+public final class SightingsTimeSeriesTest {
+  private static final double DELTA = 1e-9;
+
+  /** 1990: 3, 1991: 5, 1994: 7, 1995: 1, with no sightings in 1992 and 1993. */
+  private static SightingsTimeSeries makeSeries() {
+    SightingsTimeSeries series = new SightingsTimeSeries();
+    series.add(1990, 3);
+    series.add(1991, 5);
+    series.add(1994, 7);
+    series.add(1995, 1);
+    return series;
+  }
+
+  @Test
+  public void emptySeriesSumsToZero() {
+    SightingsTimeSeries series = new SightingsTimeSeries();
+    Assert.assertTrue(series.isEmpty());
+    Assert.assertEquals(0, series.sum(1900, 2100));
+  }
+
+  @Test
+  public void firstAndLastYears() {
+    SightingsTimeSeries series = makeSeries();
+    Assert.assertFalse(series.isEmpty());
+    Assert.assertEquals(1990, series.getFirstYear());
+    Assert.assertEquals(1995, series.getLastYear());
+  }
+
+  @Test
+  public void sumOfOneYear() {
+    SightingsTimeSeries series = makeSeries();
+    Assert.assertEquals(5, series.sum(1991, 1991));
+    Assert.assertEquals(1, series.sum(1995, 1995));
+  }
+
+  @Test
+  public void sumOverGap() {
+    SightingsTimeSeries series = makeSeries();
+    Assert.assertEquals(0, series.sum(1992, 1993));
+    Assert.assertEquals(12, series.sum(1991, 1994));
+    Assert.assertEquals(7, series.sum(1992, 1994));
+  }
+
+  @Test
+  public void sumOutsideSeries() {
+    SightingsTimeSeries series = makeSeries();
+    Assert.assertEquals(0, series.sum(1900, 1989));
+    Assert.assertEquals(0, series.sum(1996, 2100));
+    // Ranges reaching past either end only count the years in the series.
+    Assert.assertEquals(16, series.sum(1900, 2100));
+    Assert.assertEquals(8, series.sum(1900, 1991));
+    Assert.assertEquals(8, series.sum(1994, 2100));
+  }
+
+  @Test
+  public void sumOfReversedRangeIsZero() {
+    Assert.assertEquals(0, makeSeries().sum(1995, 1990));
+  }
+
+  @Test
+  public void movingAverage() {
+    SightingsTimeSeries series = makeSeries();
+    Assert.assertEquals(5, series.movingAverage(1991, 1), DELTA);
+    Assert.assertEquals(4, series.movingAverage(1991, 2), DELTA);
+    // The gap years count as having no sightings.
+    Assert.assertEquals(7 / 3.0, series.movingAverage(1994, 3), DELTA);
+    // A window starting before the series counts the missing years as zero too.
+    Assert.assertEquals(8 / 5.0, series.movingAverage(1991, 5), DELTA);
+    Assert.assertEquals(16 / 6.0, series.movingAverage(1995, 6), DELTA);
+  }
+
+  @Test
+  public void growsPastInitialCapacity() {
+    SightingsTimeSeries series = new SightingsTimeSeries();
+    for (int year = 1800; year < 2000; year++) {
+      series.add(year, 1);
+    }
+    Assert.assertEquals(200, series.sum(1800, 1999));
+    Assert.assertEquals(100, series.sum(1900, 2100));
+    Assert.assertEquals(1999, series.getLastYear());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addRejectsEarlierYear() {
+    makeSeries().add(1994, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addRejectsSameYear() {
+    makeSeries().add(1995, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addRejectsNegativeCount() {
+    makeSeries().add(1996, -1);
+  }
+}
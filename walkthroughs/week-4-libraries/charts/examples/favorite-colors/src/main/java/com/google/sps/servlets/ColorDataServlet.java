@@ -16,33 +16,43 @@ package com.google.sps.servlets;
 
 import com.google.gson.Gson;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-
+/**
+ * Counts votes for favorite colors and returns the votes for each color as a JSON object, e.g.
+ * {"Blue": 12, "Red": 7}
+ */
 @WebServlet("/color-data")
 public class ColorDataServlet extends HttpServlet {
-
-  private Map<String, Integer> colorVotes = new HashMap<>();
+  // The colors index.html offers. Other colors are refused, so that stray input doesn't become a
+  // counter or a stored total.
+  private static final Set<String> COLORS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("Red", "Orange", "Yellow", "Green", "Blue", "Violet")));
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("application/json");
     Gson gson = new Gson();
-    String json = gson.toJson(colorVotes);
+    String json = gson.toJson(VoteCounter.getVotes());
     response.getWriter().println(json);
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String color = request.getParameter("color");
-    int currentVotes = colorVotes.containsKey(color) ? colorVotes.get(color) : 0;
-    colorVotes.put(color, currentVotes + 1);
+    if (color == null || !COLORS.contains(color)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid color");
+      return;
+    }
+
+    VoteCounter.vote(color);
 
     response.sendRedirect("/index.html");
   }
@@ -0,0 +1,176 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.sps.counters.Flusher;
+import com.google.sps.counters.StoredBatches;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts votes for each color without locking, and periodically adds them to the totals in
+ * Datastore.
+ *
+ * Votes are counted in a {@code LongAdder} per color, so concurrent votes never contend on one
+ * counter. On every run of the {@code Flusher}, the votes counted since the last flush are added to
+ * a "ColorVotes" entity per color in a transaction, so the votes of every instance add up. The
+ * totals are then reloaded, so that reads pick up other instances' votes.
+ *
+ * A batch of votes that fails to store is retried until it is, and {@code StoredBatches} makes sure
+ * it is only added once.
+ */
+final class VoteCounter {
+  /** Votes for one color taken from {@code pending} to be added to its total. */
+  private static final class Batch {
+    private final long votes;
+    // Larger than that of every earlier batch of this instance.
+    private final long sequence;
+
+    private Batch(long votes, long sequence) {
+      this.votes = votes;
+      this.sequence = sequence;
+    }
+  }
+
+  /** The stored totals along with the votes being added to them, read together. */
+  private static final class Snapshot {
+    private final Map<String, Long> totals;
+    private final Map<String, Long> flushing;
+
+    private Snapshot(Map<String, Long> totals, Map<String, Long> flushing) {
+      this.totals = totals;
+      this.flushing = flushing;
+    }
+  }
+
+  // The votes counted since the last flush.
+  private static final Map<String, LongAdder> pending = new ConcurrentHashMap<>();
+
+  // Null until the totals are first loaded.
+  private static volatile Snapshot snapshot;
+
+  // Only used by flush, which the Flusher never runs twice at once. The batches not yet known to
+  // be stored, by color. New votes for a color wait until its batch is stored.
+  private static final Map<String, Batch> unstored = new HashMap<>();
+  // The sequence number of the last batch.
+  private static long lastSequence;
+
+  static {
+    Flusher.register(VoteCounter::flush);
+  }
+
+  private VoteCounter() {
+    // Disallow instances.
+  }
+
+  /** Counts a vote for {@code color}, which must be one of the colors the page offers. */
+  static void vote(String color) {
+    pending.computeIfAbsent(color, key -> new LongAdder()).increment();
+  }
+
+  /**
+   * Returns the votes for each color: the stored totals as of the last flush plus the votes
+   * counted here since.
+   */
+  static Map<String, Long> getVotes() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      current = loadSnapshot();
+    }
+
+    Map<String, Long> votes = new TreeMap<>(current.totals);
+    current.flushing.forEach((color, count) -> votes.merge(color, count, Long::sum));
+    pending.forEach((color, count) -> {
+      long sum = count.sum();
+      if (sum > 0) {
+        votes.merge(color, sum, Long::sum);
+      }
+    });
+    return votes;
+  }
+
+  private static synchronized Snapshot loadSnapshot() {
+    if (snapshot == null) {
+      snapshot = new Snapshot(loadTotals(), Collections.emptyMap());
+    }
+    return snapshot;
+  }
+
+  /**
+   * Adds the votes counted since the last flush to the stored totals and reloads them. Batches that
+   * failed to store in an earlier flush are retried.
+   */
+  private static void flush() {
+    try {
+      Map<String, Long> totals = loadSnapshot().totals;
+
+      long sequence = StoredBatches.nextSequence(lastSequence);
+      lastSequence = sequence;
+      pending.forEach((color, votes) -> {
+        if (!unstored.containsKey(color)) {
+          // Unlike sumThenReset, this never loses a vote counted between the sum and the reset.
+          long delta = votes.sum();
+          votes.add(-delta);
+          if (delta != 0) {
+            unstored.put(color, new Batch(delta, sequence));
+          }
+        }
+      });
+      snapshot = new Snapshot(totals, getUnstoredVotes());
+
+      for (Iterator<Map.Entry<String, Batch>> batches = unstored.entrySet().iterator();
+          batches.hasNext(); ) {
+        Map.Entry<String, Batch> batch = batches.next();
+        if (StoredBatches.add(DatastoreServiceFactory.getDatastoreService(),
+            KeyFactory.createKey("ColorVotes", batch.getKey()), "votes", batch.getValue().votes,
+            batch.getValue().sequence)) {
+          batches.remove();
+        }
+      }
+
+      snapshot = new Snapshot(loadTotals(), getUnstoredVotes());
+    } catch (RuntimeException e) {
+      System.err.println("Could not flush votes: " + e);
+    }
+  }
+
+  private static Map<String, Long> getUnstoredVotes() {
+    if (unstored.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Long> votes = new HashMap<>();
+    unstored.forEach((color, batch) -> votes.put(color, batch.votes));
+    return votes;
+  }
+
+  private static Map<String, Long> loadTotals() {
+    Map<String, Long> totals = new HashMap<>();
+    Query query = new Query("ColorVotes");
+    for (Entity entity : DatastoreServiceFactory.getDatastoreService().prepare(query)
+        .asIterable()) {
+      totals.put(entity.getKey().getName(), (Long) entity.getProperty("votes"));
+    }
+    return totals;
+  }
+}
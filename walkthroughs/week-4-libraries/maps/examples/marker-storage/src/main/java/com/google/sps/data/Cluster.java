@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/** A group of nearby markers, shown as one point on a zoomed out map. */
+public class Cluster {
+
+  // The average position of the markers in the cluster.
+  private final double lat;
+  private final double lng;
+  private final int count;
+  // The id of one of the markers, so that a cluster of one can be shown as that marker.
+  private final long sampleId;
+
+  public Cluster(double lat, double lng, int count, long sampleId) {
+    this.lat = lat;
+    this.lng = lng;
+    this.count = count;
+    this.sampleId = sampleId;
+  }
+
+  public double getLat() {
+    return lat;
+  }
+
+  public double getLng() {
+    return lng;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public long getSampleId() {
+    return sampleId;
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Encodes positions as geohashes.
+ *
+ * A geohash names a cell of a grid over the map. Each character splits its parent cell into 32
+ * smaller cells, so every position within a cell has a geohash starting with that cell's geohash,
+ * and the positions inside a cell can be found with a single range query on the geohash.
+ */
+public final class Geohash {
+  /** The precision stored with each marker, a cell of about 5 by 5 meters. */
+  public static final int STORED_PRECISION = 9;
+
+  private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+  private Geohash() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the geohash with {@code precision} characters of the cell containing the position.
+   */
+  public static String encode(double lat, double lng, int precision) {
+    double minLat = -90;
+    double maxLat = 90;
+    double minLng = -180;
+    double maxLng = 180;
+    // Bits alternate between longitude and latitude, starting with longitude.
+    boolean isLngBit = true;
+
+    StringBuilder geohash = new StringBuilder(precision);
+    int character = 0;
+    for (int bit = 0; bit < precision * 5; bit++) {
+      character <<= 1;
+      if (isLngBit) {
+        double mid = (minLng + maxLng) / 2;
+        if (lng >= mid) {
+          character |= 1;
+          minLng = mid;
+        } else {
+          maxLng = mid;
+        }
+      } else {
+        double mid = (minLat + maxLat) / 2;
+        if (lat >= mid) {
+          character |= 1;
+          minLat = mid;
+        } else {
+          maxLat = mid;
+        }
+      }
+      isLngBit = !isLngBit;
+
+      if (bit % 5 == 4) {
+        geohash.append(BASE32.charAt(character));
+        character = 0;
+      }
+    }
+    return geohash.toString();
+  }
+
+  /**
+   * Returns the geohashes with {@code precision} characters of every cell overlapping the box.
+   * The box must not cross the antimeridian, so {@code west <= east}.
+   */
+  public static List<String> coveringCells(double south, double west, double north, double east,
+      int precision) {
+    double cellHeight = getCellHeight(precision);
+    double cellWidth = getCellWidth(precision);
+
+    // A box touching the edge of the map can wrap onto cells already listed.
+    Set<String> cells = new LinkedHashSet<>();
+    for (double lat = alignDown(south, -90, cellHeight); lat <= north; lat += cellHeight) {
+      for (double lng = alignDown(west, -180, cellWidth); lng <= east; lng += cellWidth) {
+        // Encode the center of the cell to stay clear of rounding at its edges.
+        cells.add(encode(Math.min(lat + cellHeight / 2, 90), Math.min(lng + cellWidth / 2, 180),
+            precision));
+      }
+    }
+    return new ArrayList<>(cells);
+  }
+
+  /**
+   * Returns the number of cells with {@code precision} characters that overlap the box, without
+   * listing them. The box must not cross the antimeridian.
+   */
+  public static long countCoveringCells(double south, double west, double north, double east,
+      int precision) {
+    double cellHeight = getCellHeight(precision);
+    double cellWidth = getCellWidth(precision);
+    long rows = getCellIndex(north + 90, cellHeight, 180)
+        - getCellIndex(south + 90, cellHeight, 180) + 1;
+    long columns = getCellIndex(east + 180, cellWidth, 360)
+        - getCellIndex(west + 180, cellWidth, 360) + 1;
+    return rows * columns;
+  }
+
+  /** Returns the height in degrees of latitude of a cell with {@code precision} characters. */
+  public static double getCellHeight(int precision) {
+    return 180 / Math.pow(2, precision * 5 / 2);
+  }
+
+  /** Returns the width in degrees of longitude of a cell with {@code precision} characters. */
+  public static double getCellWidth(int precision) {
+    return 360 / Math.pow(2, (precision * 5 + 1) / 2);
+  }
+
+  /** Returns which cell {@code offset} falls in, counting the far edge as part of the last cell. */
+  private static long getCellIndex(double offset, double cellSize, double extent) {
+    long lastIndex = Math.round(extent / cellSize) - 1;
+    return Math.min((long) Math.floor(offset / cellSize), lastIndex);
+  }
+
+  private static double alignDown(double value, double origin, double step) {
+    return origin + Math.floor((value - origin) / step) * step;
+  }
+}
@@ -14,19 +14,34 @@
 
 package com.google.sps.data;
 
-/** Represents a marker on the map. */
+/**
+ * Represents a marker on the map. Markers listed for the whole map leave out their content, which
+ * is fetched separately by id when it is shown.
+ */
 public class Marker {
 
+  // 0 for a marker that has not been stored yet.
+  private final long id;
   private final double lat;
   private final double lng;
+  // Null when the content has not been loaded.
   private final String content;
 
   public Marker(double lat, double lng, String content) {
+    this(0, lat, lng, content);
+  }
+
+  public Marker(long id, double lat, double lng, String content) {
+    this.id = id;
     this.lat = lat;
     this.lng = lng;
     this.content = content;
   }
 
+  public long getId() {
+    return id;
+  }
+
   public double getLat() {
     return lat;
   }
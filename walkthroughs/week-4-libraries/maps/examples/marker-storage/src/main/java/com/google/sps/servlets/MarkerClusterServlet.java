@@ -0,0 +1,72 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.Cluster;
+import com.google.sps.requests.RequestExecutor;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns the marker clusters in view at a zoom level as a JSON array, e.g.
+ * [{"lat": 38.5, "lng": -94.8, "count": 12, "sampleId": 5629499534213120}]
+ */
+@WebServlet(urlPatterns = "/marker-clusters", asyncSupported = true)
+public class MarkerClusterServlet extends HttpServlet {
+
+  /**
+   * Responds with the clusters at the "zoom" parameter inside the viewport given by the "south",
+   * "west", "north" and "east" parameters. Zoom levels beyond {@code MarkerClusters.MAX_ZOOM} get
+   * the clusters of that level.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::writeClusters);
+  }
+
+  private void writeClusters(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    int zoom;
+    double south;
+    double west;
+    double north;
+    double east;
+    try {
+      zoom = Integer.parseInt(request.getParameter("zoom"));
+      south = Double.parseDouble(request.getParameter("south"));
+      west = Double.parseDouble(request.getParameter("west"));
+      north = Double.parseDouble(request.getParameter("north"));
+      east = Double.parseDouble(request.getParameter("east"));
+    } catch (NullPointerException | NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid zoom or viewport");
+      return;
+    }
+    if (!(zoom >= 0 && south >= -90 && south <= north && north <= 90 && west >= -180
+        && west <= 180 && east >= -180 && east <= 180)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid zoom or viewport");
+      return;
+    }
+
+    List<Cluster> clusters = MarkerClusters.getClusters(
+        Math.min(zoom, MarkerClusters.MAX_ZOOM), south, west, north, east);
+    response.setContentType("application/json");
+    response.getWriter().println(new Gson().toJson(clusters));
+  }
+}
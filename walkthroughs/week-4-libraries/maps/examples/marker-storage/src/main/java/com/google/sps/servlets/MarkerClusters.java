@@ -0,0 +1,336 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.sps.data.Cluster;
+import com.google.sps.data.Marker;
+import com.google.sps.storage.MarkerRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups markers into clusters for each zoom level of the map.
+ *
+ * Clusters come from a hierarchical grid. Zoom level {@code z} has a grid of 2^(z + 2) by 2^(z + 1)
+ * square cells, about 64 pixels wide on screen, and each cell is split into four at the next level.
+ * Every cell keeps the number of markers in it, the sum of their positions and one sample marker.
+ *
+ * Only levels up to {@code MAX_STORED_ZOOM} are kept in memory. The grid is built from every stored
+ * marker on a background thread when the app starts, and rebuilt every {@code REBUILD_MILLIS} so
+ * that it picks up markers added through other instances. Requests always read a whole grid, which
+ * is swapped in once built. Markers added through this instance are added to one cell per level
+ * straight away. The clusters of finer levels are worked out per request from the markers in view,
+ * which {@code MarkerGrid} finds.
+ */
+final class MarkerClusters {
+  /** The highest zoom level with clusters. Beyond it, markers are shown individually. */
+  static final int MAX_ZOOM = 14;
+
+  // The highest zoom level kept in the grid. Its cells are about 20 kilometers wide.
+  private static final int MAX_STORED_ZOOM = 10;
+  // The most cells in view at a finer level for its clusters to be worked out from the markers.
+  // Larger views get the clusters of MAX_STORED_ZOOM instead.
+  private static final long MAX_DERIVED_CELLS = 4096;
+  private static final long REBUILD_MILLIS = 5 * 60000;
+  // How long a request waits for the first grid before giving up.
+  private static final long FIRST_BUILD_WAIT_MILLIS = 20000;
+
+  /** The markers in one grid cell. */
+  private static final class Cell {
+    private int count;
+    private double latSum;
+    private double lngSum;
+    private long sampleId;
+
+    private void add(Marker marker) {
+      if (count == 0) {
+        sampleId = marker.getId();
+      }
+      count++;
+      latSum += marker.getLat();
+      lngSum += marker.getLng();
+    }
+
+    private Cluster toCluster() {
+      return new Cluster(latSum / count, lngSum / count, count, sampleId);
+    }
+  }
+
+  /** The cells of every stored zoom level. All access is guarded by the grid. */
+  private static final class Grid {
+    // The cells of each level, keyed by row * columns + column.
+    private final List<Map<Long, Cell>> levels = new ArrayList<>();
+
+    private Grid() {
+      for (int zoom = 0; zoom <= MAX_STORED_ZOOM; zoom++) {
+        levels.add(new HashMap<>());
+      }
+    }
+
+    private synchronized void add(Marker marker) {
+      for (int zoom = 0; zoom <= MAX_STORED_ZOOM; zoom++) {
+        levels.get(zoom).computeIfAbsent(getKey(marker, zoom), k -> new Cell()).add(marker);
+      }
+    }
+
+    private synchronized void addClusters(int zoom, double south, double west, double north,
+        double east, List<Cluster> clusters) {
+      Map<Long, Cell> cells = levels.get(zoom);
+      long firstRow = getRow(south, zoom);
+      long lastRow = getRow(north, zoom);
+      long firstColumn = getColumn(west, zoom);
+      long lastColumn = getColumn(east, zoom);
+      long columns = getColumnCount(zoom);
+
+      if ((lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > cells.size()) {
+        // Fewer cells hold markers than are in view, so check each of those instead.
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+          long row = entry.getKey() / columns;
+          long column = entry.getKey() % columns;
+          if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
+            clusters.add(entry.getValue().toCluster());
+          }
+        }
+        return;
+      }
+
+      for (long row = firstRow; row <= lastRow; row++) {
+        for (long column = firstColumn; column <= lastColumn; column++) {
+          Cell cell = cells.get(row * columns + column);
+          if (cell != null) {
+            clusters.add(cell.toCluster());
+          }
+        }
+      }
+    }
+  }
+
+  // Replaced whole by the rebuild thread. Null until the first build finishes.
+  private static volatile Grid grid;
+  private static final CountDownLatch firstBuild = new CountDownLatch(1);
+
+  // Markers added while a rebuild reads the repository, which the rebuilt grid may have missed.
+  // Null when no rebuild is running. Guarded by addLock, which also orders adds with grid swaps.
+  private static List<Marker> addedDuringRebuild;
+  private static final Object addLock = new Object();
+
+  // Guarded by MarkerClusters.class.
+  private static ScheduledExecutorService rebuilder;
+
+  private MarkerClusters() {
+    // Disallow instances.
+  }
+
+  /**
+   * Starts building the grid in the background, and rebuilding it periodically after that.
+   */
+  static synchronized void start() {
+    if (rebuilder != null) {
+      return;
+    }
+    rebuilder = Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+    rebuilder.scheduleWithFixedDelay(MarkerClusters::rebuild, 0, REBUILD_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops rebuilding the grid.
+   */
+  static synchronized void stop() {
+    if (rebuilder != null) {
+      rebuilder.shutdownNow();
+      rebuilder = null;
+    }
+  }
+
+  /**
+   * Returns the clusters at {@code zoom} whose grid cells overlap the box. If {@code west} is
+   * greater than {@code east}, the box crosses the antimeridian.
+   *
+   * @throws IOException If the grid hasn't been built yet, or the markers in view can't be read.
+   */
+  static List<Cluster> getClusters(int zoom, double south, double west, double north,
+      double east) throws IOException {
+    List<Cluster> clusters = new ArrayList<>();
+    if (west <= east) {
+      addClusters(zoom, south, west, north, east, clusters);
+    } else {
+      addClusters(zoom, south, west, north, 180, clusters);
+      addClusters(zoom, south, -180, north, east, clusters);
+    }
+    return clusters;
+  }
+
+  /**
+   * Adds a newly stored marker to the grid, if it has been built.
+   */
+  static void add(Marker marker) {
+    synchronized (addLock) {
+      Grid current = grid;
+      if (current != null) {
+        current.add(marker);
+      }
+      if (addedDuringRebuild != null) {
+        addedDuringRebuild.add(marker);
+      }
+    }
+  }
+
+  private static void addClusters(int zoom, double south, double west, double north, double east,
+      List<Cluster> clusters) throws IOException {
+    if (zoom > MAX_STORED_ZOOM) {
+      long cellsInView = (getRow(north, zoom) - getRow(south, zoom) + 1)
+          * (getColumn(east, zoom) - getColumn(west, zoom) + 1);
+      if (cellsInView <= MAX_DERIVED_CELLS) {
+        addDerivedClusters(zoom, south, west, north, east, clusters);
+        return;
+      }
+      zoom = MAX_STORED_ZOOM;
+    }
+    getGrid().addClusters(zoom, south, west, north, east, clusters);
+  }
+
+  /**
+   * Works out the clusters of a level that isn't stored from the markers in the grid cells
+   * overlapping the box.
+   */
+  private static void addDerivedClusters(int zoom, double south, double west, double north,
+      double east, List<Cluster> clusters) throws IOException {
+    long firstRow = getRow(south, zoom);
+    long lastRow = getRow(north, zoom);
+    long firstColumn = getColumn(west, zoom);
+    long lastColumn = getColumn(east, zoom);
+    double rowHeight = 180.0 / getRowCount(zoom);
+    double columnWidth = 360.0 / getColumnCount(zoom);
+
+    // Widen the box to whole cells, then leave out markers on the far edge of the last ones.
+    Map<Long, Cell> cells = new LinkedHashMap<>();
+    for (Marker marker : MarkerGrid.getMarkersInside(-90 + firstRow * rowHeight,
+        -180 + firstColumn * columnWidth, Math.min(90, -90 + (lastRow + 1) * rowHeight),
+        Math.min(180, -180 + (lastColumn + 1) * columnWidth))) {
+      long row = getRow(marker.getLat(), zoom);
+      long column = getColumn(marker.getLng(), zoom);
+      if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
+        cells.computeIfAbsent(getKey(marker, zoom), k -> new Cell()).add(marker);
+      }
+    }
+    for (Cell cell : cells.values()) {
+      clusters.add(cell.toCluster());
+    }
+  }
+
+  private static Grid getGrid() throws IOException {
+    Grid current = grid;
+    if (current != null) {
+      return current;
+    }
+
+    try {
+      firstBuild.await(FIRST_BUILD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    current = grid;
+    if (current == null) {
+      throw new IOException("Marker clusters are not built yet");
+    }
+    return current;
+  }
+
+  /**
+   * Builds a new grid from every stored marker and swaps it in. Runs on the rebuild thread.
+   */
+  private static void rebuild() {
+    MarkerRepository markers;
+    try {
+      markers = Repositories.getMarkerRepository();
+    } catch (RuntimeException e) {
+      System.err.println("Could not rebuild marker clusters: " + e);
+      return;
+    }
+    rebuild(markers);
+  }
+
+  /**
+   * Builds a new grid from every marker in {@code markers} and swaps it in. Markers added while it
+   * reads them are merged in too.
+   */
+  static void rebuild(MarkerRepository markers) {
+    synchronized (addLock) {
+      addedDuringRebuild = new ArrayList<>();
+    }
+
+    Grid rebuilt = new Grid();
+    Set<Long> ids = new HashSet<>();
+    try {
+      for (Marker marker : markers.getPositions()) {
+        rebuilt.add(marker);
+        ids.add(marker.getId());
+      }
+    } catch (IOException | RuntimeException e) {
+      // Keep serving the current grid until the next rebuild.
+      System.err.println("Could not rebuild marker clusters: " + e);
+      synchronized (addLock) {
+        addedDuringRebuild = null;
+      }
+      return;
+    }
+
+    synchronized (addLock) {
+      for (Marker marker : addedDuringRebuild) {
+        if (!ids.contains(marker.getId())) {
+          rebuilt.add(marker);
+        }
+      }
+      addedDuringRebuild = null;
+      grid = rebuilt;
+    }
+    firstBuild.countDown();
+  }
+
+  private static long getKey(Marker marker, int zoom) {
+    return getRow(marker.getLat(), zoom) * getColumnCount(zoom) + getColumn(marker.getLng(), zoom);
+  }
+
+  private static long getColumnCount(int zoom) {
+    return 1L << (zoom + 2);
+  }
+
+  private static long getRowCount(int zoom) {
+    return 1L << (zoom + 1);
+  }
+
+  private static long getColumn(double lng, int zoom) {
+    long columns = getColumnCount(zoom);
+    return Math.min(columns - 1, Math.max(0, (long) Math.floor((lng + 180) / 360 * columns)));
+  }
+
+  private static long getRow(double lat, int zoom) {
+    long rows = getRowCount(zoom);
+    return Math.min(rows - 1, Math.max(0, (long) Math.floor((lat + 90) / 180 * rows)));
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Geohash;
+import com.google.sps.data.Marker;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory cache of marker positions by geohash cell, for finding the markers inside a viewport.
+ *
+ * A viewport is covered with the smallest cells that keep the number of cells at most
+ * {@code MAX_CELLS}. Each cell is loaded from the marker repository the first time it is needed and
+ * kept for {@code EXPIRATION_MILLIS}. Markers added through this instance go straight into every
+ * cached cell containing them. Markers added through other instances show up when the cell expires.
+ *
+ * Cells coarser than {@code MIN_CACHED_PRECISION} are read from the repository every time instead,
+ * since the few viewports that need them would otherwise keep most markers in memory.
+ */
+final class MarkerGrid {
+  private static final int MAX_CELLS = 32;
+  // Cells of about 1.2 by 0.6 kilometers.
+  private static final int MAX_PRECISION = 6;
+  // Cells of about 39 by 20 kilometers.
+  private static final int MIN_CACHED_PRECISION = 4;
+  private static final int CACHE_SIZE = 4096;
+  private static final long EXPIRATION_MILLIS = 60000;
+
+  /** The markers in one cell. */
+  private static final class CachedCell {
+    // Only ever appended to, so readers can iterate while markers are added.
+    private final Queue<Marker> markers;
+    private final long expirationTime;
+
+    private CachedCell(Collection<Marker> markers, long expirationTime) {
+      this.markers = new ConcurrentLinkedQueue<>(markers);
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  // Least recently used cells are evicted first.
+  private static final Map<String, CachedCell> cells =
+      Collections.synchronizedMap(new LinkedHashMap<String, CachedCell>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCell> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      });
+
+  // The current time in milliseconds. Tests replace it to expire cells without waiting.
+  static volatile LongSupplier clock = System::currentTimeMillis;
+
+  private MarkerGrid() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the id and position of every marker inside the box. If {@code west} is greater than
+   * {@code east}, the box crosses the antimeridian.
+   */
+  static List<Marker> getMarkersInside(double south, double west, double north, double east)
+      throws IOException {
+    List<Marker> markers = new ArrayList<>();
+    if (west <= east) {
+      addMarkersInside(south, west, north, east, markers);
+    } else {
+      addMarkersInside(south, west, north, 180, markers);
+      addMarkersInside(south, -180, north, east, markers);
+    }
+    return markers;
+  }
+
+  /**
+   * Adds a newly stored marker to every cached cell containing it.
+   */
+  static void add(Marker marker) {
+    String geohash = Geohash.encode(marker.getLat(), marker.getLng(), MAX_PRECISION);
+    for (int precision = MIN_CACHED_PRECISION; precision <= MAX_PRECISION; precision++) {
+      CachedCell cached = cells.get(geohash.substring(0, precision));
+      if (cached != null) {
+        cached.markers.add(marker);
+      }
+    }
+  }
+
+  private static void addMarkersInside(double south, double west, double north, double east,
+      List<Marker> markers) throws IOException {
+    int precision = MAX_PRECISION;
+    while (precision > 1
+        && Geohash.countCoveringCells(south, west, north, east, precision) > MAX_CELLS) {
+      precision--;
+    }
+
+    for (String cell : Geohash.coveringCells(south, west, north, east, precision)) {
+      for (Marker marker : getCell(cell)) {
+        if (marker.getLat() >= south && marker.getLat() <= north && marker.getLng() >= west
+            && marker.getLng() <= east) {
+          markers.add(marker);
+        }
+      }
+    }
+  }
+
+  private static Collection<Marker> getCell(String cell) throws IOException {
+    if (cell.length() < MIN_CACHED_PRECISION) {
+      return Repositories.getMarkerRepository().getPositionsInCell(cell);
+    }
+
+    CachedCell cached = cells.get(cell);
+    if (cached != null && clock.getAsLong() <= cached.expirationTime) {
+      return cached.markers;
+    }
+
+    Collection<Marker> markers = Repositories.getMarkerRepository().getPositionsInCell(cell);
+    cached = new CachedCell(markers, clock.getAsLong() + EXPIRATION_MILLIS);
+    cells.put(cell, cached);
+    return cached.markers;
+  }
+}
@@ -14,16 +14,13 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.sps.data.Marker;
 import com.google.gson.Gson;
+import com.google.sps.data.Marker;
+import com.google.sps.requests.RequestExecutor;
+import com.google.sps.storage.Repositories;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -32,59 +29,96 @@ import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
 
 /** Handles fetching and saving markers data. */
-@WebServlet("/markers")
+@WebServlet(urlPatterns = "/markers", asyncSupported = true)
 public class MarkerServlet extends HttpServlet {
 
-  /** Responds with a JSON array containing marker data. */
+  /**
+   * Responds with a JSON array containing the id and position of the markers inside the viewport
+   * given by the "south", "west", "north" and "east" parameters, or of every marker if there is no
+   * viewport. If an "id" parameter is given instead, responds with that marker including its
+   * content.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
+    RequestExecutor.execute(request, response, this::writeMarkers);
+  }
 
-    Collection<Marker> markers = getMarkers();
+  /** Writes the requested markers to {@code response} as JSON. */
+  private void writeMarkers(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    response.setContentType("application/json");
     Gson gson = new Gson();
-    String json = gson.toJson(markers);
-
-    response.getWriter().println(json);
-  }
 
-  /** Accepts a POST request containing a new marker. */
-  @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) {
-    double lat = Double.parseDouble(request.getParameter("lat"));
-    double lng = Double.parseDouble(request.getParameter("lng"));
-    String content = Jsoup.clean(request.getParameter("content"), Whitelist.none());
+    String id = request.getParameter("id");
+    if (id == null) {
+      writeMarkerPositions(request, response, gson);
+      return;
+    }
 
-    Marker marker = new Marker(lat, lng, content);
-    storeMarker(marker);
+    Marker marker;
+    try {
+      marker = Repositories.getMarkerRepository().get(Long.parseLong(id));
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    if (marker == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    response.getWriter().println(gson.toJson(marker));
   }
 
-  /** Fetches markers from Datastore. */
-  private Collection<Marker> getMarkers() {
-    Collection<Marker> markers = new ArrayList<>();
+  /** Writes the id and position of the markers in the requested viewport as JSON. */
+  private void writeMarkerPositions(HttpServletRequest request, HttpServletResponse response,
+      Gson gson) throws IOException {
+    if (request.getParameter("south") == null) {
+      Collection<Marker> markers = Repositories.getMarkerRepository().getPositions();
+      response.getWriter().println(gson.toJson(markers));
+      return;
+    }
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    Query query = new Query("Marker");
-    PreparedQuery results = datastore.prepare(query);
+    double south;
+    double west;
+    double north;
+    double east;
+    try {
+      south = Double.parseDouble(request.getParameter("south"));
+      west = Double.parseDouble(request.getParameter("west"));
+      north = Double.parseDouble(request.getParameter("north"));
+      east = Double.parseDouble(request.getParameter("east"));
+    } catch (NullPointerException | NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid viewport");
+      return;
+    }
+    if (!(south >= -90 && south <= north && north <= 90 && west >= -180 && west <= 180
+        && east >= -180 && east <= 180)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid viewport");
+      return;
+    }
 
-    for (Entity entity : results.asIterable()) {
-      double lat = (double) entity.getProperty("lat");
-      double lng = (double) entity.getProperty("lng");
-      String content = (String) entity.getProperty("content");
+    List<Marker> markers = MarkerGrid.getMarkersInside(south, west, north, east);
+    response.getWriter().println(gson.toJson(markers));
+  }
 
-      Marker marker = new Marker(lat, lng, content);
-      markers.add(marker);
-    }
-    return markers;
+  /** Accepts a POST request containing a new marker. */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    RequestExecutor.execute(request, response, this::saveMarker);
   }
 
-  /** Stores a marker in Datastore. */
-  public void storeMarker(Marker marker) {
-    Entity markerEntity = new Entity("Marker");
-    markerEntity.setProperty("lat", marker.getLat());
-    markerEntity.setProperty("lng", marker.getLng());
-    markerEntity.setProperty("content", marker.getContent());
+  /** Stores the marker given in {@code request} and responds with it, including its new id. */
+  private void saveMarker(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    double lat = Double.parseDouble(request.getParameter("lat"));
+    double lng = Double.parseDouble(request.getParameter("lng"));
+    String content = Jsoup.clean(request.getParameter("content"), Whitelist.none());
+
+    Marker marker = Repositories.getMarkerRepository().add(new Marker(lat, lng, content));
+    MarkerGrid.add(marker);
+    MarkerClusters.add(marker);
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(markerEntity);
+    response.setContentType("application/json");
+    response.getWriter().println(new Gson().toJson(marker));
   }
 }
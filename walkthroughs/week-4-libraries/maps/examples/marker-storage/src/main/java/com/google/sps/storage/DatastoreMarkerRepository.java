@@ -0,0 +1,154 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.Geohash;
+import com.google.sps.data.Marker;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores markers in Datastore as entities of kind "Marker", each with a "geohash" property so that
+ * the markers in a cell can be found with a range query.
+ *
+ * Markers stored before geohashes were added are given one the first time the repository is
+ * created after the upgrade. A "Migration" entity records that this was done, so later instances
+ * skip it.
+ */
+final class DatastoreMarkerRepository implements MarkerRepository {
+  // Sorts after every geohash character, so appending it to a cell gives the end of its range.
+  private static final String CELL_END = "{";
+  private static final Key GEOHASH_BACKFILL_KEY =
+      KeyFactory.createKey("Migration", "marker-geohash");
+  // Entities read and written per round trip while backfilling.
+  private static final int BACKFILL_BATCH_SIZE = 500;
+
+  DatastoreMarkerRepository() {
+    backfillGeohashes();
+  }
+
+  /**
+   * Sets the "geohash" property of every marker stored without one, unless that was already done.
+   * Running it more than once, such as on two instances starting together, is harmless.
+   */
+  private static void backfillGeohashes() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    try {
+      datastore.get(GEOHASH_BACKFILL_KEY);
+      return;
+    } catch (EntityNotFoundException e) {
+      // Not done yet.
+    }
+
+    List<Entity> updated = new ArrayList<>();
+    Iterable<Entity> markers = datastore.prepare(new Query("Marker"))
+        .asIterable(FetchOptions.Builder.withChunkSize(BACKFILL_BATCH_SIZE));
+    for (Entity entity : markers) {
+      if (entity.hasProperty("geohash")) {
+        continue;
+      }
+      double lat = (double) entity.getProperty("lat");
+      double lng = (double) entity.getProperty("lng");
+      entity.setProperty("geohash", Geohash.encode(lat, lng, Geohash.STORED_PRECISION));
+      updated.add(entity);
+      if (updated.size() == BACKFILL_BATCH_SIZE) {
+        datastore.put(updated);
+        updated.clear();
+      }
+    }
+    if (!updated.isEmpty()) {
+      datastore.put(updated);
+    }
+
+    Entity done = new Entity(GEOHASH_BACKFILL_KEY);
+    done.setProperty("timestamp", System.currentTimeMillis());
+    datastore.put(done);
+  }
+
+  @Override
+  public Collection<Marker> getPositions() {
+    return toPositions(Projections.fetch(new Query("Marker"),
+        new PropertyProjection("lat", Double.class),
+        new PropertyProjection("lng", Double.class)));
+  }
+
+  @Override
+  public Collection<Marker> getPositionsInCell(String cell) {
+    Query query = new Query("Marker").setFilter(CompositeFilterOperator.and(
+        new FilterPredicate("geohash", FilterOperator.GREATER_THAN_OR_EQUAL, cell),
+        new FilterPredicate("geohash", FilterOperator.LESS_THAN, cell + CELL_END)));
+    return toPositions(Projections.fetch(query,
+        new PropertyProjection("geohash", String.class),
+        new PropertyProjection("lat", Double.class),
+        new PropertyProjection("lng", Double.class)));
+  }
+
+  private static Collection<Marker> toPositions(Iterable<Entity> results) {
+    Collection<Marker> markers = new ArrayList<>();
+    for (Entity entity : results) {
+      long id = entity.getKey().getId();
+      double lat = (double) entity.getProperty("lat");
+      double lng = (double) entity.getProperty("lng");
+
+      Marker marker = new Marker(id, lat, lng, null);
+      markers.add(marker);
+    }
+    return markers;
+  }
+
+  @Override
+  public Marker get(long id) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity entity;
+    try {
+      entity = datastore.get(KeyFactory.createKey("Marker", id));
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+
+    double lat = (double) entity.getProperty("lat");
+    double lng = (double) entity.getProperty("lng");
+    String content = (String) entity.getProperty("content");
+    return new Marker(id, lat, lng, content);
+  }
+
+  @Override
+  public Marker add(Marker marker) {
+    Entity markerEntity = new Entity("Marker");
+    markerEntity.setProperty("lat", marker.getLat());
+    markerEntity.setProperty("lng", marker.getLng());
+    markerEntity.setProperty("content", marker.getContent());
+    markerEntity.setProperty("geohash",
+        Geohash.encode(marker.getLat(), marker.getLng(), Geohash.STORED_PRECISION));
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    datastore.put(markerEntity);
+    return new Marker(markerEntity.getKey().getId(), marker.getLat(), marker.getLng(),
+        marker.getContent());
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Geohash;
+import com.google.sps.data.Marker;
+import com.google.sps.logstore.LogStore;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Stores markers in a {@code LogStore} on local disk, for running without Datastore.
+ *
+ * The position of every marker is also kept in memory, ordered by geohash, so the markers in a
+ * cell are found without reading the log.
+ */
+final class LocalMarkerRepository implements MarkerRepository {
+
+  private static final LogStore.Codec<Marker> CODEC = new LogStore.Codec<Marker>() {
+    @Override
+    public void write(DataOutput out, Marker marker) throws IOException {
+      out.writeLong(marker.getId());
+      out.writeDouble(marker.getLat());
+      out.writeDouble(marker.getLng());
+      out.writeUTF(marker.getContent());
+    }
+
+    @Override
+    public Marker read(DataInput in) throws IOException {
+      return new Marker(in.readLong(), in.readDouble(), in.readDouble(), in.readUTF());
+    }
+  };
+
+  private final LogStore<Marker> store;
+  // Marker positions keyed by geohash, then id.
+  private final NavigableMap<String, Marker> positions = new ConcurrentSkipListMap<>();
+
+  LocalMarkerRepository(Path file) throws IOException {
+    // Markers have no order, so they are listed newest id first.
+    store = LogStore.open(file, CODEC, marker -> 0);
+    for (LogStore.Record<Marker> record : store.list(null, Integer.MAX_VALUE)) {
+      addPosition(record.getValue());
+    }
+  }
+
+  @Override
+  public Collection<Marker> getPositions() {
+    return new ArrayList<>(positions.values());
+  }
+
+  @Override
+  public Collection<Marker> getPositionsInCell(String cell) {
+    // Every key in the cell starts with it, and every character of a key sorts before '{'.
+    return new ArrayList<>(positions.subMap(cell, cell + "{").values());
+  }
+
+  @Override
+  public Marker get(long id) throws IOException {
+    return store.get(id);
+  }
+
+  @Override
+  public Marker add(Marker marker) throws IOException {
+    long id = store.nextId();
+    Marker stored = new Marker(id, marker.getLat(), marker.getLng(), marker.getContent());
+    store.put(id, stored);
+    addPosition(stored);
+    return stored;
+  }
+
+  private void addPosition(Marker marker) {
+    String key = Geohash.encode(marker.getLat(), marker.getLng(), Geohash.STORED_PRECISION) + ":"
+        + marker.getId();
+    positions.put(key, new Marker(marker.getId(), marker.getLat(), marker.getLng(), null));
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.sps.data.Marker;
+import java.io.IOException;
+import java.util.Collection;
+
+/** Stores the markers on the map. */
+public interface MarkerRepository {
+
+  /** Returns the id and position of every marker, leaving out their content. */
+  Collection<Marker> getPositions() throws IOException;
+
+  /**
+   * Returns the id and position of every marker whose geohash starts with {@code cell}, leaving
+   * out their content.
+   */
+  Collection<Marker> getPositionsInCell(String cell) throws IOException;
+
+  /** Returns the whole marker with {@code id}, or null if there is no such marker. */
+  Marker get(long id) throws IOException;
+
+  /** Stores a new marker and returns it with its newly assigned id. */
+  Marker add(Marker marker) throws IOException;
+}
@@ -0,0 +1,52 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.storage;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+
+/**
+ * Runs Datastore queries that return only the properties a page displays.
+ *
+ * A projection query reads its values straight from an index, so the entities it returns hold only
+ * the projected properties and are much smaller to send and decode than whole entities. Projected
+ * properties must be indexed, and projecting more than one property, or sorting on one, needs a
+ * composite index, which WEB-INF/datastore-indexes.xml declares. Entities missing a projected
+ * property are left out of the results.
+ */
+final class Projections {
+  // Entities fetched per round trip while iterating over the results.
+  private static final int CHUNK_SIZE = 500;
+
+  private Projections() {
+    // Disallow instances.
+  }
+
+  /**
+   * Runs {@code query} returning only the given properties of each entity, along with its key.
+   */
+  static Iterable<Entity> fetch(Query query, PropertyProjection... projections) {
+    for (PropertyProjection projection : projections) {
+      query.addProjection(projection);
+    }
+
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    return datastore.prepare(query).asIterable(FetchOptions.Builder.withChunkSize(CHUNK_SIZE));
+  }
+}
@@ -17,6 +17,18 @@ let map;
 /* Editable marker that displays when a user clicks in the map. */
 let editMarker;
 
+/*
+ * The highest zoom level that shows clusters instead of individual markers.
+ * Matches MarkerClusters.MAX_ZOOM on the server.
+ */
+const MAX_CLUSTER_ZOOM = 14;
+
+/* Stored markers shown on the map, keyed by id. */
+const displayedMarkers = new Map();
+
+/* Markers standing for clusters shown on the map. */
+let clusterMarkers = [];
+
 /** Creates a map that allows users to add markers. */
 function createMap() {
   map = new google.maps.Map(
@@ -29,37 +41,119 @@ function createMap() {
     createMarkerForEdit(event.latLng.lat(), event.latLng.lng());
   });
 
-  fetchMarkers();
+  // Whenever the user stops panning or zooming, load the markers in view.
+  map.addListener('idle', () => {
+    clusterMarkers.forEach(marker => marker.setMap(null));
+    clusterMarkers = [];
+    if (map.getZoom() <= MAX_CLUSTER_ZOOM) {
+      displayedMarkers.forEach(marker => marker.setMap(null));
+      displayedMarkers.clear();
+      fetchClusters();
+    } else {
+      fetchMarkers();
+    }
+  });
+}
+
+/** Returns the visible part of the map as request parameters. */
+function getViewportParams() {
+  const bounds = map.getBounds();
+  const params = new URLSearchParams();
+  params.append('south', bounds.getSouthWest().lat());
+  params.append('west', bounds.getSouthWest().lng());
+  params.append('north', bounds.getNorthEast().lat());
+  params.append('east', bounds.getNorthEast().lng());
+  return params;
 }
 
-/** Fetches markers from the backend and adds them to the map. */
+/**
+ * Fetches the clusters inside the visible part of the map from the backend and
+ * shows each one as a marker labeled with its size. A cluster of one marker is
+ * shown as that marker.
+ */
+function fetchClusters() {
+  const zoom = map.getZoom();
+  const params = getViewportParams();
+  params.append('zoom', zoom);
+
+  fetch('/marker-clusters?' + params).then(response => response.json()).then(
+      (clusters) => {
+        // Ignore the response if the user has zoomed since the request.
+        if (map.getZoom() != zoom) {
+          return;
+        }
+        clusters.forEach((cluster) => {
+          if (cluster.count == 1) {
+            clusterMarkers.push(createMarkerForDisplay(
+                cluster.lat, cluster.lng, null, cluster.sampleId));
+            return;
+          }
+          const marker = new google.maps.Marker({
+            position: {lat: cluster.lat, lng: cluster.lng},
+            label: String(cluster.count),
+            map: map
+          });
+          marker.addListener('click', () => {
+            map.setCenter(marker.getPosition());
+            map.setZoom(zoom + 2);
+          });
+          clusterMarkers.push(marker);
+        });
+      });
+}
+
+/**
+ * Fetches the markers inside the visible part of the map from the backend and
+ * adds the ones that aren't shown yet.
+ */
 function fetchMarkers() {
-  fetch('/markers').then(response => response.json()).then((markers) => {
-    markers.forEach(
-        (marker) => {
-            createMarkerForDisplay(marker.lat, marker.lng, marker.content)});
-  });
+  fetch('/markers?' + getViewportParams()).then(response => response.json()).then(
+      (markers) => {
+        markers.forEach((marker) => {
+          if (!displayedMarkers.has(marker.id)) {
+            displayedMarkers.set(marker.id, createMarkerForDisplay(
+                marker.lat, marker.lng, null, marker.id));
+          }
+        });
+      });
 }
 
-/** Creates a marker that shows a read-only info window when clicked. */
-function createMarkerForDisplay(lat, lng, content) {
+/**
+ * Creates and returns a marker that shows a read-only info window when clicked.
+ * If the content is null, it is fetched from the backend the first time the
+ * marker is clicked.
+ */
+function createMarkerForDisplay(lat, lng, content, id) {
   const marker =
       new google.maps.Marker({position: {lat: lat, lng: lng}, map: map});
 
   const infoWindow = new google.maps.InfoWindow({content: content});
   marker.addListener('click', () => {
-    infoWindow.open(map, marker);
+    if (infoWindow.getContent() != null) {
+      infoWindow.open(map, marker);
+      return;
+    }
+    fetch('/markers?id=' + id).then(response => response.json()).then(
+        (loaded) => {
+          infoWindow.setContent(loaded.content);
+          infoWindow.open(map, marker);
+        });
   });
+  return marker;
 }
 
-/** Sends a marker to the backend for saving. */
+/**
+ * Sends a marker to the backend for saving and returns a promise of the stored
+ * marker.
+ */
 function postMarker(lat, lng, content) {
   const params = new URLSearchParams();
   params.append('lat', lat);
   params.append('lng', lng);
   params.append('content', content);
 
-  fetch('/markers', {method: 'POST', body: params});
+  return fetch('/markers', {method: 'POST', body: params})
+      .then(response => response.json());
 }
 
 /** Creates a marker that shows a textbox the user can edit. */
@@ -93,8 +187,9 @@ function buildInfoWindowInput(lat, lng) {
   button.appendChild(document.createTextNode('Submit'));
 
   button.onclick = () => {
-    postMarker(lat, lng, textBox.value);
-    createMarkerForDisplay(lat, lng, textBox.value);
+    const marker = createMarkerForDisplay(lat, lng, textBox.value);
+    postMarker(lat, lng, textBox.value)
+        .then(stored => displayedMarkers.set(stored.id, marker));
     editMarker.setMap(null);
   };
 
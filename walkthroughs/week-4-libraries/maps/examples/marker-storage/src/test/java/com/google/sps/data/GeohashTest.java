@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code Geohash} encodes positions and covers boxes with cells as documented. */
+@RunWith(JUnit4.class)
+public final class GeohashTest {
+
+  @Test
+  public void encodesKnownPositions() {
+    Assert.assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+    Assert.assertEquals("s0000", Geohash.encode(0, 0, 5));
+    Assert.assertEquals("00000", Geohash.encode(-90, -180, 5));
+    Assert.assertEquals("zzzzz", Geohash.encode(90, 180, 5));
+  }
+
+  @Test
+  public void shorterGeohashIsPrefix() {
+    String full = Geohash.encode(-33.8688, 151.2093, Geohash.STORED_PRECISION);
+    for (int precision = 1; precision < Geohash.STORED_PRECISION; precision++) {
+      Assert.assertEquals(full.substring(0, precision),
+          Geohash.encode(-33.8688, 151.2093, precision));
+    }
+  }
+
+  @Test
+  public void cellSizesAlternateBetweenSquareAndWide() {
+    Assert.assertEquals(45, Geohash.getCellWidth(1), 0);
+    Assert.assertEquals(45, Geohash.getCellHeight(1), 0);
+    Assert.assertEquals(11.25, Geohash.getCellWidth(2), 0);
+    Assert.assertEquals(5.625, Geohash.getCellHeight(2), 0);
+  }
+
+  @Test
+  public void coveringCellsOfOneCell() {
+    // A box well inside the single precision 1 cell "s", which spans 0 to 45 both ways.
+    List<String> cells = Geohash.coveringCells(10, 10, 20, 20, 1);
+    Assert.assertEquals(1, cells.size());
+    Assert.assertEquals("s", cells.get(0));
+    Assert.assertEquals(1, Geohash.countCoveringCells(10, 10, 20, 20, 1));
+  }
+
+  @Test
+  public void coveringCellsContainEveryCorner() {
+    double south = 51.28;
+    double west = -0.51;
+    double north = 51.69;
+    double east = 0.33;
+    for (int precision = 1; precision <= 5; precision++) {
+      List<String> cells = Geohash.coveringCells(south, west, north, east, precision);
+      for (double lat : new double[] {south, north}) {
+        for (double lng : new double[] {west, east}) {
+          Assert.assertTrue(cells.contains(Geohash.encode(lat, lng, precision)));
+        }
+      }
+      Assert.assertEquals(cells.size(), new HashSet<>(cells).size());
+    }
+  }
+
+  @Test
+  public void countMatchesCoveringCells() {
+    double[][] boxes = {
+      {51.28, -0.51, 51.69, 0.33},
+      {-10, -10, 10, 10},
+      // Boxes reaching the edges of the map.
+      {80, 170, 90, 180},
+      {-90, -180, -80, -170},
+      {-90, -180, 90, 180},
+    };
+    for (double[] box : boxes) {
+      for (int precision = 1; precision <= 4; precision++) {
+        List<String> cells = Geohash.coveringCells(box[0], box[1], box[2], box[3], precision);
+        Assert.assertEquals(cells.size(), new HashSet<>(cells).size());
+        Assert.assertEquals(cells.size(),
+            Geohash.countCoveringCells(box[0], box[1], box[2], box[3], precision));
+      }
+    }
+  }
+
+  @Test
+  public void wholeMapIsEveryCell() {
+    Assert.assertEquals(32, Geohash.countCoveringCells(-90, -180, 90, 180, 1));
+    Assert.assertEquals(1024, Geohash.countCoveringCells(-90, -180, 90, 180, 2));
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Points {@code Repositories} at local storage, for tests that read markers through it. */
+final class LocalStorage {
+
+  private LocalStorage() {
+    // Disallow instances.
+  }
+
+  /**
+   * Selects a local marker repository in a new temporary directory. Must be called before the
+   * repository is first used, and only takes effect the first time.
+   */
+  static synchronized void use() throws IOException {
+    if (System.getProperty("sps.storage") == null) {
+      System.setProperty("sps.storage", "local");
+      System.setProperty("sps.storageDirectory",
+          Files.createTempDirectory("marker-storage").toString());
+    }
+  }
+}
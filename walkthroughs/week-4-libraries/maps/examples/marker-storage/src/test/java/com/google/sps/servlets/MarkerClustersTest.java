@@ -0,0 +1,183 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Cluster;
+import com.google.sps.data.Marker;
+import com.google.sps.storage.MarkerRepository;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code MarkerClusters} groups markers by grid cell, works out the clusters of finer
+ * zoom levels from the markers in view, and keeps markers added while the grid is rebuilt. Each
+ * test rebuilds the grid from markers of its own.
+ */
+@RunWith(JUnit4.class)
+public final class MarkerClustersTest {
+  private static final double DELTA = 1e-9;
+
+  /** A repository that only lists {@code positions}, and runs {@code whileListing} as it does. */
+  private static final class FakeRepository implements MarkerRepository {
+    private final Collection<Marker> positions;
+    private final Runnable whileListing;
+
+    private FakeRepository(Runnable whileListing, Marker... positions) {
+      this.positions = Arrays.asList(positions);
+      this.whileListing = whileListing;
+    }
+
+    @Override
+    public Collection<Marker> getPositions() {
+      whileListing.run();
+      return positions;
+    }
+
+    @Override
+    public Collection<Marker> getPositionsInCell(String cell) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Marker get(long id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Marker add(Marker marker) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @BeforeClass
+  public static void useLocalStorage() throws IOException {
+    LocalStorage.use();
+  }
+
+  private static void rebuildFrom(Marker... markers) {
+    MarkerClusters.rebuild(new FakeRepository(() -> {}, markers));
+  }
+
+  private static List<Cluster> getWorldClusters(int zoom) throws IOException {
+    return MarkerClusters.getClusters(zoom, -90, -180, 90, 180);
+  }
+
+  private static int countMarkers(List<Cluster> clusters) {
+    int count = 0;
+    for (Cluster cluster : clusters) {
+      count += cluster.getCount();
+    }
+    return count;
+  }
+
+  @Test
+  public void groupsMarkersByCell() throws IOException {
+    // At zoom 0 the grid is 4 by 2 cells of 90 degrees.
+    rebuildFrom(new Marker(1, 10, 10, null), new Marker(2, 20, 30, null),
+        new Marker(3, -10, -10, null), new Marker(4, 89.9, 179.9, null));
+
+    List<Cluster> clusters = getWorldClusters(0);
+
+    Assert.assertEquals(3, clusters.size());
+    Assert.assertEquals(4, countMarkers(clusters));
+    for (Cluster cluster : clusters) {
+      if (cluster.getCount() == 2) {
+        Assert.assertEquals(15, cluster.getLat(), DELTA);
+        Assert.assertEquals(20, cluster.getLng(), DELTA);
+        Assert.assertEquals(1, cluster.getSampleId());
+      }
+    }
+  }
+
+  @Test
+  public void splitsCellsAtEachZoom() throws IOException {
+    // Cell boundaries at zoom 1 fall at multiples of 45 degrees, which these markers straddle.
+    rebuildFrom(new Marker(1, 10, 40, null), new Marker(2, 10, 50, null));
+
+    Assert.assertEquals(1, getWorldClusters(0).size());
+    Assert.assertEquals(2, getWorldClusters(1).size());
+  }
+
+  @Test
+  public void viewCrossingAntimeridianSeesBothSides() throws IOException {
+    rebuildFrom(new Marker(1, 0.5, 179.5, null), new Marker(2, 0.5, -179.5, null),
+        new Marker(3, 0.5, 0, null));
+
+    List<Cluster> clusters = MarkerClusters.getClusters(5, 0, 179, 1, -179);
+
+    Assert.assertEquals(2, clusters.size());
+    Assert.assertEquals(2, countMarkers(clusters));
+  }
+
+  @Test
+  public void keepsMarkersAddedDuringRebuild() throws IOException {
+    Marker stored = new Marker(1, 10, 10, null);
+    Marker addedAndStored = new Marker(2, 10, 10, null);
+    Marker addedOnly = new Marker(3, 10, 10, null);
+    // Both are added while the rebuild lists markers, but only one is listed.
+    MarkerClusters.rebuild(new FakeRepository(() -> {
+      MarkerClusters.add(addedAndStored);
+      MarkerClusters.add(addedOnly);
+    }, stored, addedAndStored));
+
+    List<Cluster> clusters = getWorldClusters(0);
+
+    Assert.assertEquals(1, clusters.size());
+    Assert.assertEquals(3, clusters.get(0).getCount());
+  }
+
+  @Test
+  public void addedMarkerJoinsBuiltGrid() throws IOException {
+    rebuildFrom(new Marker(1, 10, 10, null));
+
+    MarkerClusters.add(new Marker(2, 10, 10, null));
+
+    Assert.assertEquals(2, countMarkers(getWorldClusters(0)));
+  }
+
+  @Test
+  public void derivesClustersAboveStoredZoom() throws IOException {
+    // At zoom 12 cells are 360 / 2^14 degrees wide and 180 / 2^13 high, about 0.022 degrees, so
+    // the first two markers share a cell and the third is in the next one east.
+    double cell = 360.0 / (1 << 14);
+    double lat = 12 * cell + cell / 2;
+    double lng = 3000 * cell + cell / 4 - 180;
+    Marker[] markers = new Marker[3];
+    markers[0] = Repositories.getMarkerRepository().add(new Marker(lat, lng, "a"));
+    markers[1] = Repositories.getMarkerRepository().add(new Marker(lat, lng + cell / 4, "b"));
+    markers[2] = Repositories.getMarkerRepository().add(new Marker(lat, lng + cell, "c"));
+    rebuildFrom(markers);
+
+    double south = lat - cell;
+    double west = lng - cell;
+    double north = lat + cell;
+    double east = lng + 2 * cell;
+    List<Cluster> derived = MarkerClusters.getClusters(12, south, west, north, east);
+    List<Cluster> stored = MarkerClusters.getClusters(10, south, west, north, east);
+
+    Assert.assertEquals(2, derived.size());
+    Assert.assertEquals(3, countMarkers(derived));
+    Assert.assertEquals(1, stored.size());
+    Assert.assertEquals(3, stored.get(0).getCount());
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Marker;
+import com.google.sps.storage.Repositories;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that {@code MarkerGrid} finds the markers in a viewport, including one that crosses the
+ * antimeridian, and picks up markers stored elsewhere once a cell expires. The grid and the
+ * repository are global, so each test uses its own part of the map.
+ */
+@RunWith(JUnit4.class)
+public final class MarkerGridTest {
+
+  @BeforeClass
+  public static void useLocalStorage() throws IOException {
+    LocalStorage.use();
+  }
+
+  @After
+  public void restoreClock() {
+    MarkerGrid.clock = System::currentTimeMillis;
+  }
+
+  private static Marker store(double lat, double lng) throws IOException {
+    return Repositories.getMarkerRepository().add(new Marker(lat, lng, "content"));
+  }
+
+  private static Set<Long> getIdsInside(double south, double west, double north, double east)
+      throws IOException {
+    Set<Long> ids = new HashSet<>();
+    for (Marker marker : MarkerGrid.getMarkersInside(south, west, north, east)) {
+      ids.add(marker.getId());
+    }
+    return ids;
+  }
+
+  private static Set<Long> idsOf(Marker... markers) {
+    Set<Long> ids = new HashSet<>();
+    for (Marker marker : markers) {
+      ids.add(marker.getId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void findsOnlyMarkersInside() throws IOException {
+    Marker inside = store(40.01, -100.01);
+    Marker outside = store(40.05, -100.01);
+
+    List<Marker> markers = MarkerGrid.getMarkersInside(40, -100.02, 40.02, -100);
+
+    Assert.assertEquals(1, markers.size());
+    Assert.assertEquals(inside.getId(), markers.get(0).getId());
+    Assert.assertTrue(getIdsInside(40, -100.02, 40.06, -100).contains(outside.getId()));
+  }
+
+  @Test
+  public void splitsViewportCrossingAntimeridian() throws IOException {
+    Marker east = store(-20.01, 179.99);
+    Marker west = store(-20.01, -179.99);
+    Marker elsewhere = store(-20.01, 0);
+
+    Set<Long> ids = getIdsInside(-20.02, 179.98, -20, -179.98);
+
+    Assert.assertEquals(idsOf(east, west), ids);
+    Assert.assertFalse(ids.contains(elsewhere.getId()));
+  }
+
+  @Test
+  public void addedMarkerIsInCachedCell() throws IOException {
+    Marker first = store(30.01, 30.01);
+    Assert.assertEquals(idsOf(first), getIdsInside(30, 30, 30.02, 30.02));
+
+    // Stored through this instance, so it goes straight into the cached cell.
+    Marker added = store(30.015, 30.015);
+    MarkerGrid.add(added);
+
+    Assert.assertEquals(idsOf(first, added), getIdsInside(30, 30, 30.02, 30.02));
+  }
+
+  @Test
+  public void expiredCellIsReloaded() throws IOException {
+    Marker first = store(-45.01, 60.01);
+    Assert.assertEquals(idsOf(first), getIdsInside(-45.02, 60, -45, 60.02));
+
+    // Stored as if through another instance, so the cached cell doesn't have it yet.
+    Marker other = store(-45.015, 60.015);
+    Assert.assertEquals(idsOf(first), getIdsInside(-45.02, 60, -45, 60.02));
+
+    long later = System.currentTimeMillis() + 61000;
+    MarkerGrid.clock = () -> later;
+    Assert.assertEquals(idsOf(first, other), getIdsInside(-45.02, 60, -45, 60.02));
+  }
+}
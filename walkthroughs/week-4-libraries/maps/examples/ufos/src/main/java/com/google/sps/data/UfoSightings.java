@@ -0,0 +1,61 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+
+/**
+ * UFO sightings stored as columns: one array of latitudes and one of longitudes, instead of an
+ * object per sighting.
+ */
+public final class UfoSightings {
+  private double[] lats = new double[1024];
+  private double[] lngs = new double[1024];
+  private int size = 0;
+
+  /** Adds a sighting at the given point. */
+  public void add(double lat, double lng) {
+    if (size == lats.length) {
+      lats = Arrays.copyOf(lats, size * 2);
+      lngs = Arrays.copyOf(lngs, size * 2);
+    }
+    lats[size] = lat;
+    lngs[size] = lng;
+    size++;
+  }
+
+  /** Adds every sighting in {@code other}. */
+  public void addAll(UfoSightings other) {
+    if (size + other.size > lats.length) {
+      lats = Arrays.copyOf(lats, Math.max(size + other.size, size * 2));
+      lngs = Arrays.copyOf(lngs, lats.length);
+    }
+    System.arraycopy(other.lats, 0, lats, size, other.size);
+    System.arraycopy(other.lngs, 0, lngs, size, other.size);
+    size += other.size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double getLat(int index) {
+    return lats[index];
+  }
+
+  public double getLng(int index) {
+    return lngs[index];
+  }
+}
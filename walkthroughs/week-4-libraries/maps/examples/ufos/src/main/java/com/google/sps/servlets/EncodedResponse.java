@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A response body encoded once, ahead of time, both as is and gzipped. Each request then only
+ * copies the bytes for the encoding the client accepts straight to the output stream.
+ */
+final class EncodedResponse {
+  private final String contentType;
+  private final byte[] body;
+  private final byte[] gzippedBody;
+
+  EncodedResponse(String contentType, byte[] body) throws IOException {
+    this.contentType = contentType;
+    this.body = body;
+
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write(body);
+    }
+    this.gzippedBody = gzipped.toByteArray();
+  }
+
+  /** Writes the body to {@code response}, gzipped if the request accepts it. */
+  void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+    byte[] bytes = gzip ? gzippedBody : body;
+
+    response.setContentType(contentType);
+    response.setHeader("Vary", "Accept-Encoding");
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentLength(bytes.length);
+    response.getOutputStream().write(bytes);
+  }
+}
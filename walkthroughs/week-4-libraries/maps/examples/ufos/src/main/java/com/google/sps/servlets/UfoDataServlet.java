@@ -14,45 +14,83 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.data.UfoSighting;
-import com.google.gson.Gson;
+import com.google.sps.csv.CsvReader;
+import com.google.sps.data.UfoSightings;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}] */
+/**
+ * Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}], or with a
+ * "format=binary" parameter as the latitude and longitude of each sighting in turn, each a
+ * little-endian 64-bit float.
+ *
+ * Both responses are encoded once when the servlet starts, so requests only copy bytes.
+ */
 @WebServlet("/ufo-data")
 public class UfoDataServlet extends HttpServlet {
 
-  private Collection<UfoSighting> ufoSightings;
+  private EncodedResponse json;
+  private EncodedResponse binary;
 
   @Override
-  public void init() {
-    ufoSightings = new ArrayList<>();
-
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream("/WEB-INF/ufo-data.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
-
-      double lat = Double.parseDouble(cells[0]);
-      double lng = Double.parseDouble(cells[1]);
+  public void init() throws ServletException {
+    UfoSightings ufoSightings = new UfoSightings();
+    try {
+      CsvReader reader = CsvReader.open(getServletContext(), "/WEB-INF/ufo-data.csv");
+      List<UfoSightings> chunks = reader.parseInChunks(Runtime.getRuntime().availableProcessors(),
+          UfoSightings::new, (row, chunk) -> chunk.add(row.getDouble(0), row.getDouble(1)));
+      for (UfoSightings chunk : chunks) {
+        ufoSightings.addAll(chunk);
+      }
+    } catch (IOException e) {
+      throw new ServletException("Could not load UFO data", e);
+    }
 
-      ufoSightings.add(new UfoSighting(lat, lng));
+    try {
+      json = new EncodedResponse("application/json", toJson(ufoSightings));
+      binary = new EncodedResponse("application/octet-stream", toBinary(ufoSightings));
+    } catch (IOException e) {
+      throw new ServletException("Could not encode UFO data", e);
     }
-    scanner.close();
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(ufoSightings);
-    response.getWriter().println(json);
+    if ("binary".equals(request.getParameter("format"))) {
+      binary.write(request, response);
+    } else {
+      json.write(request, response);
+    }
+  }
+
+  private static byte[] toJson(UfoSightings ufoSightings) {
+    StringBuilder json = new StringBuilder(ufoSightings.size() * 40);
+    json.append('[');
+    for (int i = 0; i < ufoSightings.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"lat\":").append(ufoSightings.getLat(i))
+          .append(",\"lng\":").append(ufoSightings.getLng(i)).append('}');
+    }
+    json.append("]\n");
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] toBinary(UfoSightings ufoSightings) {
+    ByteBuffer binary =
+        ByteBuffer.allocate(ufoSightings.size() * 2 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < ufoSightings.size(); i++) {
+      binary.putDouble(ufoSightings.getLat(i)).putDouble(ufoSightings.getLng(i));
+    }
+    return binary.array();
   }
 }
@@ -14,14 +14,22 @@
 
 /** Fetches UFO sightings data from the server and displays it in a map. */
 function createUfoSightingsMap() {
-  fetch('/ufo-data').then(response => response.json()).then((ufoSightings) => {
+  fetch('/ufo-data?format=binary').then(response => response.arrayBuffer())
+      .then((buffer) => {
     const map = new google.maps.Map(
         document.getElementById('map'),
         {center: {lat: 35.78613674, lng: -119.4491591}, zoom: 7});
 
-    ufoSightings.forEach((ufoSighting) => {
-      new google.maps.Marker(
-          {position: {lat: ufoSighting.lat, lng: ufoSighting.lng}, map: map});
-    });
+    // The latitude and longitude of each sighting in turn, little-endian.
+    const view = new DataView(buffer);
+    for (let offset = 0; offset < view.byteLength; offset += 16) {
+      new google.maps.Marker({
+        position: {
+          lat: view.getFloat64(offset, true),
+          lng: view.getFloat64(offset + 8, true)
+        },
+        map: map
+      });
+    }
   });
 }
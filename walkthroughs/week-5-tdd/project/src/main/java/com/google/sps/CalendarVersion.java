@@ -0,0 +1,210 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * CalendarVersion is an immutable, numbered version of the events in a calendar. Versions are
+ * safe to read from any number of threads without locking.
+ *
+ * Events are stored in small fixed-capacity chunks. A change produces a new version that copies
+ * only the chunk it touches and the array of chunk references, and shares every other chunk with
+ * the version it was made from. That keeps the cost of a write proportional to the chunk size plus
+ * the number of chunks, instead of to the number of events. A removal that leaves a chunk less than
+ * half full merges it with a neighbor, so removals can't leave behind many nearly empty chunks.
+ */
+public final class CalendarVersion {
+  private static final int CHUNK_SIZE = 32;
+  private static final int MIN_CHUNK_SIZE = CHUNK_SIZE / 2;
+
+  public static final CalendarVersion EMPTY = new CalendarVersion(0, new Event[0][], new int[0], 0);
+
+  private final long number;
+  // Chunks are never modified once a version referencing them is published.
+  private final Event[][] chunks;
+  // offsets[i] is the index of the first event of chunks[i].
+  private final int[] offsets;
+  private final int size;
+
+  private CalendarVersion(long number, Event[][] chunks, int[] offsets, int size) {
+    this.number = number;
+    this.chunks = chunks;
+    this.offsets = offsets;
+    this.size = size;
+  }
+
+  /**
+   * Creates the first version of a calendar holding {@code events}.
+   */
+  public static CalendarVersion of(Collection<Event> events) {
+    Event[] all = events.toArray(new Event[0]);
+    int chunkCount = (all.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    Event[][] chunks = new Event[chunkCount][];
+    for (int i = 0; i < chunkCount; i++) {
+      chunks[i] = Arrays.copyOfRange(all, i * CHUNK_SIZE, Math.min(all.length, (i + 1) * CHUNK_SIZE));
+    }
+    return new CalendarVersion(0, chunks, computeOffsets(chunks), all.length);
+  }
+
+  /**
+   * Returns the number of this version. Every change increments it by one.
+   */
+  public long getNumber() {
+    return number;
+  }
+
+  /**
+   * Returns the number of events in this version.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a read-only view of the events in this version.
+   */
+  public List<Event> getEvents() {
+    return new AbstractList<Event>() {
+      @Override
+      public Event get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int chunk = chunkOf(index);
+        return chunks[chunk][index - offsets[chunk]];
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Returns the index of the first occurrence of {@code event}, or -1 if it is not in this version.
+   */
+  public int indexOf(Event event) {
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      for (int i = 0; i < chunks[chunk].length; i++) {
+        if (chunks[chunk][i].equals(event)) {
+          return offsets[chunk] + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a new version with {@code event} appended.
+   */
+  public CalendarVersion withAdded(Event event) {
+    int last = chunks.length - 1;
+    if (last >= 0 && chunks[last].length < CHUNK_SIZE) {
+      Event[][] newChunks = chunks.clone();
+      newChunks[last] = Arrays.copyOf(chunks[last], chunks[last].length + 1);
+      newChunks[last][chunks[last].length] = event;
+      return new CalendarVersion(number + 1, newChunks, offsets, size + 1);
+    }
+
+    Event[][] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+    newChunks[chunks.length] = new Event[] {event};
+    int[] newOffsets = Arrays.copyOf(offsets, offsets.length + 1);
+    newOffsets[offsets.length] = size;
+    return new CalendarVersion(number + 1, newChunks, newOffsets, size + 1);
+  }
+
+  /**
+   * Returns a new version with the event at {@code index} removed.
+   */
+  public CalendarVersion withRemoved(int index) {
+    int chunk = chunkOf(index);
+    int position = index - offsets[chunk];
+    Event[] oldChunk = chunks[chunk];
+    Event[] shrunk = new Event[oldChunk.length - 1];
+    System.arraycopy(oldChunk, 0, shrunk, 0, position);
+    System.arraycopy(oldChunk, position + 1, shrunk, position, shrunk.length - position);
+
+    Event[][] newChunks;
+    if (chunks.length == 1) {
+      // Drop the chunk entirely rather than keeping an empty one around.
+      newChunks = shrunk.length == 0 ? new Event[0][] : new Event[][] {shrunk};
+    } else if (shrunk.length >= MIN_CHUNK_SIZE) {
+      newChunks = chunks.clone();
+      newChunks[chunk] = shrunk;
+    } else {
+      // Merge with the next chunk, or the previous one for the last chunk.
+      int first = chunk + 1 < chunks.length ? chunk : chunk - 1;
+      Event[] left = first == chunk ? shrunk : chunks[first];
+      Event[] right = first == chunk ? chunks[chunk + 1] : shrunk;
+      Event[] merged = Arrays.copyOf(left, left.length + right.length);
+      System.arraycopy(right, 0, merged, left.length, right.length);
+
+      if (merged.length <= CHUNK_SIZE) {
+        newChunks = new Event[chunks.length - 1][];
+        System.arraycopy(chunks, 0, newChunks, 0, first);
+        newChunks[first] = merged;
+        System.arraycopy(chunks, first + 2, newChunks, first + 1, chunks.length - first - 2);
+      } else {
+        // Too many for one chunk, so split them evenly between the two.
+        newChunks = chunks.clone();
+        int half = merged.length / 2;
+        newChunks[first] = Arrays.copyOfRange(merged, 0, half);
+        newChunks[first + 1] = Arrays.copyOfRange(merged, half, merged.length);
+      }
+    }
+    return new CalendarVersion(number + 1, newChunks, computeOffsets(newChunks), size - 1);
+  }
+
+  /**
+   * Returns a new version with the event at {@code index} replaced by {@code replacement}.
+   */
+  public CalendarVersion withReplaced(int index, Event replacement) {
+    int chunk = chunkOf(index);
+    Event[][] newChunks = chunks.clone();
+    newChunks[chunk] = chunks[chunk].clone();
+    newChunks[chunk][index - offsets[chunk]] = replacement;
+    return new CalendarVersion(number + 1, newChunks, offsets, size);
+  }
+
+  /**
+   * Returns the number of chunks the events are stored in.
+   */
+  int getChunkCount() {
+    return chunks.length;
+  }
+
+  /**
+   * Returns the chunk holding the event at {@code index} by binary searching the chunk offsets.
+   */
+  private int chunkOf(int index) {
+    int chunk = Arrays.binarySearch(offsets, index);
+    return chunk >= 0 ? chunk : -chunk - 2;
+  }
+
+  private static int[] computeOffsets(Event[][] chunks) {
+    int[] offsets = new int[chunks.length];
+    int offset = 0;
+    for (int i = 0; i < chunks.length; i++) {
+      offsets[i] = offset;
+      offset += chunks[i].length;
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,461 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * EventStore is a durable, mutable collection of {@code Event}s.
+ *
+ * Every change is appended to a write-ahead log and synced to disk before the call returns.
+ * Concurrent writers share fsyncs: whichever writer syncs first makes every change appended before
+ * it durable, so a burst of writes costs a handful of syncs instead of one per change. The log is
+ * periodically compacted in the background into a snapshot, and recovery loads that snapshot and
+ * replays only the log written after it.
+ *
+ * Readers never lock: each change publishes a new immutable {@code CalendarVersion}, and readers
+ * work against whichever version was current when they started.
+ */
+public final class EventStore implements Closeable {
+  private static final String SNAPSHOT_FILE = "events.snapshot";
+  private static final String SNAPSHOT_TEMP_FILE = "events.snapshot.tmp";
+  private static final String LOG_FILE_PREFIX = "events.log.";
+
+  // How often the background thread checks whether the log should be compacted.
+  private static final long COMPACTION_PERIOD_SECONDS = 60;
+  // The number of log entries written since the last snapshot that triggers a compaction.
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  private enum ChangeType { ADD, REMOVE, UPDATE }
+
+  /** A single line of the write-ahead log. */
+  private static final class LogEntry {
+    private final long sequence;
+    private final ChangeType type;
+    private final Event event;
+    // Only set for UPDATE entries.
+    private final Event replacement;
+
+    private LogEntry(long sequence, ChangeType type, Event event, Event replacement) {
+      this.sequence = sequence;
+      this.type = type;
+      this.event = event;
+      this.replacement = replacement;
+    }
+  }
+
+  /** The contents of the snapshot file. */
+  private static final class Snapshot {
+    // Sequence number of the last change included in this snapshot.
+    private final long sequence;
+    private final List<Event> events;
+
+    private Snapshot(long sequence, List<Event> events) {
+      this.sequence = sequence;
+      this.events = events;
+    }
+  }
+
+  private final Gson gson = new Gson();
+  private final Path directory;
+  private final ScheduledExecutorService compactor;
+
+  // Serializes fsyncs of the log; held by the writer currently syncing on behalf of the others.
+  private final Object syncLock = new Object();
+  // Guarded by syncLock.
+  private long syncedSequence;
+
+  // Replaced, never modified, by writers holding this.
+  private final AtomicReference<CalendarVersion> current = new AtomicReference<>();
+
+  // The fields below are guarded by this.
+  private FileChannel log;
+  private long logSegment;
+  private long lastSequence;
+  private long snapshotSequence;
+  // Set if a failed append could not be undone, after which the log refuses further changes.
+  private IOException logFailure;
+
+  /**
+   * Opens the store kept in {@code directory}, recovering any events written by a previous
+   * instance. If the directory holds no store yet, it is created with {@code initialEvents}.
+   *
+   * @param directory The directory holding the snapshot and log files. Must be non-null.
+   * @param initialEvents The events of a brand new store. Must be non-null.
+   * @throws IOException If the store could not be read or created.
+   */
+  public EventStore(Path directory, Collection<Event> initialEvents) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory cannot be null");
+    }
+
+    if (initialEvents == null) {
+      throw new IllegalArgumentException("initialEvents cannot be null. Use empty array instead.");
+    }
+
+    this.directory = directory;
+    Files.createDirectories(directory);
+
+    Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+    if (Files.exists(snapshotFile)) {
+      Snapshot snapshot = readSnapshot(snapshotFile);
+      current.set(CalendarVersion.of(snapshot.events));
+      snapshotSequence = snapshot.sequence;
+      lastSequence = snapshot.sequence;
+      replayLogs();
+    } else {
+      current.set(CalendarVersion.of(initialEvents));
+      writeSnapshot(new Snapshot(0, new ArrayList<>(initialEvents)));
+    }
+    syncedSequence = lastSequence;
+
+    logSegment++;
+    log = openLog(logSegment);
+
+    compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "event-store-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    compactor.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_PERIOD_SECONDS,
+        COMPACTION_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns the current version of the calendar. The version never changes, so a caller that needs
+   * a consistent view across several reads should hold on to it instead of calling this again.
+   */
+  public CalendarVersion getCurrentVersion() {
+    return current.get();
+  }
+
+  /**
+   * Returns a read-only view of all the events currently in the store.
+   */
+  public List<Event> getEvents() {
+    return current.get().getEvents();
+  }
+
+  /**
+   * Adds {@code event} to the store. Returns once the change is durable.
+   */
+  public void add(Event event) throws IOException {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    long sequence;
+    synchronized (this) {
+      sequence = append(ChangeType.ADD, event, null);
+      current.set(current.get().withAdded(event));
+    }
+    awaitDurable(sequence);
+  }
+
+  /**
+   * Removes one occurrence of {@code event} from the store. Returns once the change is durable.
+   *
+   * @return True if the event was in the store.
+   */
+  public boolean remove(Event event) throws IOException {
+    long sequence;
+    synchronized (this) {
+      CalendarVersion version = current.get();
+      int index = version.indexOf(event);
+      if (index == -1) {
+        return false;
+      }
+      sequence = append(ChangeType.REMOVE, event, null);
+      current.set(version.withRemoved(index));
+    }
+    awaitDurable(sequence);
+    return true;
+  }
+
+  /**
+   * Replaces one occurrence of {@code event} with {@code replacement}. Returns once the change is
+   * durable.
+   *
+   * @return True if the event was in the store.
+   */
+  public boolean update(Event event, Event replacement) throws IOException {
+    if (replacement == null) {
+      throw new IllegalArgumentException("replacement cannot be null");
+    }
+
+    long sequence;
+    synchronized (this) {
+      CalendarVersion version = current.get();
+      int index = version.indexOf(event);
+      if (index == -1) {
+        return false;
+      }
+      sequence = append(ChangeType.UPDATE, event, replacement);
+      current.set(version.withReplaced(index, replacement));
+    }
+    awaitDurable(sequence);
+    return true;
+  }
+
+  /**
+   * Writes the current events to a new snapshot and deletes the log segments it covers.
+   *
+   * The log is switched to a new segment before the snapshot is written, so writers are only
+   * blocked for the switch and not for the snapshot itself.
+   */
+  public void compact() throws IOException {
+    Snapshot snapshot;
+    long coveredSegment;
+    synchronized (syncLock) {
+      synchronized (this) {
+        // Make everything in the old segment durable before leaving it, since writers waiting on
+        // it only ever sync the current segment.
+        log.force(false);
+        log.close();
+        syncedSequence = lastSequence;
+
+        snapshot = new Snapshot(lastSequence, new ArrayList<>(current.get().getEvents()));
+        coveredSegment = logSegment;
+        logSegment++;
+        log = openLog(logSegment);
+      }
+    }
+
+    writeSnapshot(snapshot);
+    synchronized (this) {
+      snapshotSequence = snapshot.sequence;
+    }
+
+    for (Path segment : listLogSegments().headMap(coveredSegment, true).values()) {
+      Files.delete(segment);
+    }
+  }
+
+  /**
+   * Stops background compaction and closes the log. Every change already returned from is durable.
+   */
+  @Override
+  public void close() throws IOException {
+    compactor.shutdownNow();
+    synchronized (syncLock) {
+      synchronized (this) {
+        log.force(false);
+        log.close();
+      }
+    }
+  }
+
+  /**
+   * Appends a change to the log without syncing it. Must be called while holding this.
+   *
+   * If the write fails partway, the log is truncated back to where the entry started, so that the
+   * next entry doesn't land on the same line as the torn one. If even that fails, the store stops
+   * accepting changes rather than risk making later entries unreadable.
+   *
+   * @return The sequence number of the appended change.
+   */
+  private long append(ChangeType type, Event event, Event replacement) throws IOException {
+    if (logFailure != null) {
+      throw new IOException("Event log is unusable after an earlier failed write", logFailure);
+    }
+
+    long sequence = lastSequence + 1;
+    String line = gson.toJson(new LogEntry(sequence, type, event, replacement)) + "\n";
+    ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    long start = log.size();
+    try {
+      while (buffer.hasRemaining()) {
+        log.write(buffer);
+      }
+    } catch (IOException e) {
+      try {
+        log.truncate(start);
+      } catch (IOException truncateError) {
+        e.addSuppressed(truncateError);
+        logFailure = e;
+      }
+      throw e;
+    }
+    lastSequence = sequence;
+    return sequence;
+  }
+
+  /**
+   * Blocks until the change with the given sequence number has been synced to disk.
+   *
+   * Writers queue up on {@code syncLock} while one of them syncs. The sync covers every change
+   * appended before it started, so most of the queued writers find their change already durable
+   * and return without syncing again.
+   */
+  private void awaitDurable(long sequence) throws IOException {
+    synchronized (syncLock) {
+      if (syncedSequence >= sequence) {
+        return;
+      }
+
+      long target;
+      FileChannel channel;
+      synchronized (this) {
+        target = lastSequence;
+        channel = log;
+      }
+      channel.force(false);
+      syncedSequence = target;
+    }
+  }
+
+  /**
+   * Compacts the log if enough changes were written since the last snapshot. Run periodically by
+   * the background compactor.
+   */
+  private void compactIfNeeded() {
+    synchronized (this) {
+      if (lastSequence - snapshotSequence < COMPACTION_THRESHOLD) {
+        return;
+      }
+    }
+
+    try {
+      compact();
+    } catch (IOException e) {
+      // The log still holds every change, so a failed compaction only costs recovery time.
+      System.err.println("Could not compact event store: " + e);
+    }
+  }
+
+  /**
+   * Applies every log entry written after the loaded snapshot. A torn entry means the process
+   * stopped or failed mid-write, and that change was never acknowledged to its writer, so it is
+   * skipped and replay carries on with the entries after it.
+   */
+  private void replayLogs() throws IOException {
+    for (Path segment : listLogSegments().values()) {
+      try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          LogEntry entry;
+          try {
+            entry = gson.fromJson(line, LogEntry.class);
+          } catch (JsonParseException e) {
+            System.err.println("Skipping torn entry in " + segment.getFileName() + ": " + e);
+            continue;
+          }
+
+          if (entry == null || entry.sequence <= lastSequence) {
+            continue;
+          }
+          applyLogEntry(entry);
+          lastSequence = entry.sequence;
+        }
+      }
+    }
+  }
+
+  private void applyLogEntry(LogEntry entry) {
+    CalendarVersion version = current.get();
+    switch (entry.type) {
+      case ADD:
+        current.set(version.withAdded(entry.event));
+        break;
+      case REMOVE:
+        int removedIndex = version.indexOf(entry.event);
+        if (removedIndex != -1) {
+          current.set(version.withRemoved(removedIndex));
+        }
+        break;
+      case UPDATE:
+        int updatedIndex = version.indexOf(entry.event);
+        if (updatedIndex != -1) {
+          current.set(version.withReplaced(updatedIndex, entry.replacement));
+        }
+        break;
+    }
+  }
+
+  /**
+   * Returns the log segments currently on disk, keyed by segment number. Also records the highest
+   * segment number so that new segments never reuse an old one.
+   */
+  private TreeMap<Long, Path> listLogSegments() throws IOException {
+    TreeMap<Long, Path> segments = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_FILE_PREFIX + "*")) {
+      for (Path file : files) {
+        String suffix = file.getFileName().toString().substring(LOG_FILE_PREFIX.length());
+        try {
+          segments.put(Long.parseLong(suffix), file);
+        } catch (NumberFormatException e) {
+          System.err.println("Ignoring unexpected file in event store: " + file);
+        }
+      }
+    }
+
+    synchronized (this) {
+      if (!segments.isEmpty()) {
+        logSegment = Math.max(logSegment, segments.lastKey());
+      }
+    }
+    return segments;
+  }
+
+  private FileChannel openLog(long segment) throws IOException {
+    return FileChannel.open(directory.resolve(LOG_FILE_PREFIX + segment), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private Snapshot readSnapshot(Path snapshotFile) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+      return gson.fromJson(reader, Snapshot.class);
+    }
+  }
+
+  /**
+   * Writes {@code snapshot} to a temporary file and atomically moves it over the old snapshot, so
+   * a crash mid-write leaves the old snapshot intact.
+   */
+  private void writeSnapshot(Snapshot snapshot) throws IOException {
+    Path tempFile = directory.resolve(SNAPSHOT_TEMP_FILE);
+    byte[] contents = gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(contents);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(tempFile, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
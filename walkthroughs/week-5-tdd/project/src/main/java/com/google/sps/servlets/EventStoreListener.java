@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.EventStore;
+import com.google.sps.Events;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Opens the {@code EventStore} shared by every servlet when the app starts, and closes it when the
+ * app stops.
+ *
+ * The store is kept in the directory named by the "sps.eventStoreDirectory" system property, or
+ * under the temporary directory if it is unset. Events added or removed only outlast a restart if
+ * that directory is on a persistent disk. App Engine instances have no such disk, so there every new
+ * instance starts again from the events in {@code Events}.
+ */
+@WebListener
+public class EventStoreListener implements ServletContextListener {
+  private static final String STORE_ATTRIBUTE = EventStore.class.getName();
+
+  /**
+   * Returns the store opened for the app that {@code context} belongs to.
+   */
+  public static EventStore getStore(ServletContext context) {
+    return (EventStore) context.getAttribute(STORE_ATTRIBUTE);
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    Path directory = getStoreDirectory();
+    try {
+      EventStore store = new EventStore(directory, Arrays.asList(Events.events));
+      event.getServletContext().setAttribute(STORE_ATTRIBUTE, store);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open event store in " + directory, e);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    try {
+      getStore(event.getServletContext()).close();
+    } catch (IOException e) {
+      System.err.println("Could not close event store: " + e);
+    }
+  }
+
+  private static Path getStoreDirectory() {
+    String directory = System.getProperty("sps.eventStoreDirectory");
+    if (directory == null) {
+      // Only the temporary directory is writable on App Engine.
+      return Paths.get(System.getProperty("java.io.tmpdir"), "calendar");
+    }
+    return Paths.get(directory);
+  }
+}
@@ -14,7 +14,6 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
 import com.google.gson.Gson;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
@@ -27,7 +26,8 @@ public class GetEventsServlet extends HttpServlet {
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
+    String jsonResponse =
+        gson.toJson(EventStoreListener.getStore(getServletContext()).getEvents().toArray());
 
     // Send the JSON back as the response
     response.setContentType("application/json");
@@ -14,13 +14,12 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.CalendarVersion;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
 import com.google.sps.TimeRange;
 import com.google.gson.Gson;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -36,10 +35,11 @@ public class QueryServlet extends HttpServlet {
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
-    // Find the possible meeting times.
+    // Find the possible meeting times against a single version of the calendar, so that changes
+    // made while the query runs can't be half-seen.
+    CalendarVersion calendar = EventStoreListener.getStore(getServletContext()).getCurrentVersion();
     FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    Collection<TimeRange> answer = findMeetingQuery.query(calendar.getEvents(), meetingRequest);
 
     // Convert the times to JSON
     String jsonResponse = gson.toJson(answer);
@@ -0,0 +1,150 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CalendarVersionTest {
+  // Enough events to span several chunks.
+  private static final int EVENT_COUNT = 100;
+
+  private static Event makeEvent(int i) {
+    return new Event("Event " + i, TimeRange.fromStartDuration(i, 1), Arrays.asList("Person " + i));
+  }
+
+  private static List<Event> makeEvents(int count) {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      events.add(makeEvent(i));
+    }
+    return events;
+  }
+
+  @Test
+  public void emptyVersionHasNoEvents() {
+    Assert.assertEquals(0, CalendarVersion.EMPTY.size());
+    Assert.assertTrue(CalendarVersion.EMPTY.getEvents().isEmpty());
+  }
+
+  @Test
+  public void addingMatchesList() {
+    List<Event> expected = makeEvents(EVENT_COUNT);
+
+    CalendarVersion version = CalendarVersion.EMPTY;
+    for (Event event : expected) {
+      version = version.withAdded(event);
+    }
+
+    Assert.assertEquals(expected, version.getEvents());
+    Assert.assertEquals(EVENT_COUNT, version.getNumber());
+  }
+
+  @Test
+  public void removingMatchesList() {
+    List<Event> expected = makeEvents(EVENT_COUNT);
+    CalendarVersion version = CalendarVersion.of(expected);
+
+    // Remove from the middle of a chunk, the start, and the end.
+    for (int index : new int[] {40, 0, EVENT_COUNT - 3}) {
+      expected.remove(index);
+      version = version.withRemoved(index);
+    }
+
+    Assert.assertEquals(expected, version.getEvents());
+  }
+
+  @Test
+  public void removingWholeChunkMatchesList() {
+    List<Event> expected = makeEvents(EVENT_COUNT);
+    CalendarVersion version = CalendarVersion.of(expected);
+
+    for (int i = 0; i < 40; i++) {
+      expected.remove(10);
+      version = version.withRemoved(10);
+    }
+
+    Assert.assertEquals(expected, version.getEvents());
+    Assert.assertEquals(expected.indexOf(makeEvent(70)), version.indexOf(makeEvent(70)));
+  }
+
+  @Test
+  public void removingMergesSmallChunks() {
+    List<Event> expected = makeEvents(EVENT_COUNT * 4);
+    CalendarVersion version = CalendarVersion.of(expected);
+
+    // Remove every other event, which would leave every chunk half empty without merging.
+    for (int index = expected.size() - 2; index >= 0; index -= 2) {
+      expected.remove(index);
+      version = version.withRemoved(index);
+    }
+
+    Assert.assertEquals(expected, version.getEvents());
+    // Every chunk but possibly one holds at least half of its capacity.
+    Assert.assertTrue(version.getChunkCount() <= expected.size() / 16 + 1);
+  }
+
+  @Test
+  public void removingEverythingLeavesNoChunks() {
+    List<Event> expected = makeEvents(EVENT_COUNT);
+    CalendarVersion version = CalendarVersion.of(expected);
+
+    while (version.size() > 0) {
+      version = version.withRemoved(version.size() / 2);
+    }
+
+    Assert.assertTrue(version.getEvents().isEmpty());
+    Assert.assertEquals(0, version.getChunkCount());
+  }
+
+  @Test
+  public void replacingMatchesList() {
+    List<Event> expected = makeEvents(EVENT_COUNT);
+    CalendarVersion version = CalendarVersion.of(expected);
+
+    Event replacement = makeEvent(EVENT_COUNT);
+    expected.set(50, replacement);
+    version = version.withReplaced(50, replacement);
+
+    Assert.assertEquals(expected, version.getEvents());
+    Assert.assertEquals(50, version.indexOf(replacement));
+  }
+
+  @Test
+  public void oldVersionsAreUnchanged() {
+    List<Event> events = makeEvents(EVENT_COUNT);
+    CalendarVersion original = CalendarVersion.of(events);
+
+    original.withAdded(makeEvent(EVENT_COUNT));
+    original.withRemoved(10);
+    original.withReplaced(20, makeEvent(EVENT_COUNT));
+
+    Assert.assertEquals(events, original.getEvents());
+  }
+
+  @Test
+  public void missingEventHasNoIndex() {
+    CalendarVersion version = CalendarVersion.of(makeEvents(EVENT_COUNT));
+
+    Assert.assertEquals(-1, version.indexOf(makeEvent(EVENT_COUNT)));
+  }
+}
@@ -0,0 +1,184 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@code EventStore} changes survive reopening, compaction and torn log entries. */
+@RunWith(JUnit4.class)
+public final class EventStoreTest {
+  private static final Collection<Event> NO_EVENTS = Collections.emptySet();
+
+  // Some people that we can use in our tests.
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final Event EVENT_A = new Event("Event 1",
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(8, 0), 30), Arrays.asList(PERSON_A));
+  private static final Event EVENT_B = new Event("Event 2",
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(9, 0), 60), Arrays.asList(PERSON_B));
+  private static final Event EVENT_C = new Event("Event 3",
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(10, 0), 30),
+      Arrays.asList(PERSON_A, PERSON_B));
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.newFolder().toPath();
+  }
+
+  @Test
+  public void newStoreStartsWithInitialEvents() throws IOException {
+    try (EventStore store = new EventStore(directory, Arrays.asList(EVENT_A, EVENT_B))) {
+      Assert.assertEquals(Arrays.asList(EVENT_A, EVENT_B), store.getEvents());
+    }
+  }
+
+  @Test
+  public void changesSurviveReopening() throws IOException {
+    try (EventStore store = new EventStore(directory, Arrays.asList(EVENT_A))) {
+      store.add(EVENT_B);
+      store.update(EVENT_A, EVENT_C);
+      store.remove(EVENT_B);
+    }
+
+    // The initial events must not be used once the store exists.
+    try (EventStore store = new EventStore(directory, Arrays.asList(EVENT_B))) {
+      Assert.assertEquals(Arrays.asList(EVENT_C), store.getEvents());
+    }
+  }
+
+  @Test
+  public void changesAfterCompactionSurviveReopening() throws IOException {
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      store.add(EVENT_A);
+      store.add(EVENT_B);
+      store.compact();
+      store.remove(EVENT_A);
+      store.add(EVENT_C);
+    }
+
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      Assert.assertEquals(Arrays.asList(EVENT_B, EVENT_C), store.getEvents());
+    }
+  }
+
+  @Test
+  public void compactionDeletesCoveredLogSegments() throws IOException {
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      store.add(EVENT_A);
+      store.compact();
+      store.compact();
+    }
+
+    List<Path> logs = new ArrayList<>();
+    Files.newDirectoryStream(directory, "events.log.*").forEach(logs::add);
+    Assert.assertEquals(1, logs.size());
+  }
+
+  @Test
+  public void removingMissingEventIsNotLogged() throws IOException {
+    try (EventStore store = new EventStore(directory, Arrays.asList(EVENT_A))) {
+      Assert.assertFalse(store.remove(EVENT_B));
+      Assert.assertFalse(store.update(EVENT_B, EVENT_C));
+      Assert.assertEquals(Arrays.asList(EVENT_A), store.getEvents());
+    }
+  }
+
+  @Test
+  public void tornLogEntryIsIgnored() throws IOException {
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      store.add(EVENT_A);
+    }
+
+    // Simulate a crash in the middle of appending the next entry.
+    Path log = directory.resolve("events.log.1");
+    Files.write(log, "{\"sequence\":2,\"type\":\"AD".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      Assert.assertEquals(Arrays.asList(EVENT_A), store.getEvents());
+    }
+  }
+
+  @Test
+  public void entriesAfterTornEntryAreReplayed() throws IOException {
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      store.add(EVENT_A);
+      store.add(EVENT_B);
+    }
+
+    // Put a torn entry between the two good ones, as a failed write followed by a successful one
+    // would.
+    Path log = directory.resolve("events.log.1");
+    List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+    Assert.assertEquals(2, lines.size());
+    lines.add(1, "{\"sequence\":2,\"type\":\"AD");
+    Files.write(log, lines, StandardCharsets.UTF_8);
+
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      Assert.assertEquals(Arrays.asList(EVENT_A, EVENT_B), store.getEvents());
+    }
+  }
+
+  @Test
+  public void concurrentWritersAreAllDurable() throws Exception {
+    int writers = 8;
+    int eventsPerWriter = 50;
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        String title = "Writer " + i;
+        Thread thread = new Thread(() -> {
+          for (int j = 0; j < eventsPerWriter; j++) {
+            try {
+              store.add(new Event(title, TimeRange.fromStartDuration(j, 1), Arrays.asList(title)));
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    }
+
+    try (EventStore store = new EventStore(directory, NO_EVENTS)) {
+      Assert.assertEquals(writers * eventsPerWriter, store.getEvents().size());
+    }
+  }
+}